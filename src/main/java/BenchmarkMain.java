@@ -2,14 +2,19 @@
  * Copyright (c) 2015 European Organisation for Nuclear Research (CERN), All Rights Reserved.
  */
 
+import benchmark.BenchmarkOptions;
 import benchmark.BenchmarkPrinter;
 import benchmark.BenchmarkRunner;
-import benchmark.LoadIterator;
-import benchmark.RandomMemoryLoadGenerator;
+import benchmark.ColdStartLaunch;
+import benchmark.TrialLauncher;
 import model.Task;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -78,6 +83,9 @@ public class BenchmarkMain {
 
     private final BenchmarkPrinter printer;
     private final BenchmarkRunner runner;
+    private final BenchmarkOptions options;
+    private int trialLoad = -1;
+    private ColdStartLaunch coldStart;
 
     public BenchmarkMain(Task task, long runtimeInNanos, int iterations, String taskName, String classTestName,
             String uniqueClassName) {
@@ -86,10 +94,23 @@ public class BenchmarkMain {
 
     public BenchmarkMain(Task task, long runtimeInNanos, int iterations, BenchmarkPrinter printer,
             String classTestName) {
-        this.runner = new BenchmarkRunner(task, classTestName, runtimeInNanos, iterations);
+        this(task, runtimeInNanos, iterations, printer, classTestName, new BenchmarkOptions());
+    }
+
+    public BenchmarkMain(Task task, long runtimeInNanos, int iterations, BenchmarkPrinter printer,
+            String classTestName, BenchmarkOptions options) {
+        this.runner = new BenchmarkRunner(task, classTestName, runtimeInNanos, iterations, options);
         this.printer = printer;
+        this.options = options;
 
-        long totalRuntimeInSeconds = (iterations + 1 /* Including warmup */)
+        if (options.getColdStarts() > 0) {
+            printer.getStandardOutput().println(String.format("Preparing %s cold start benchmark with %d launch(es) "
+                    + "of %d iteration(s)", task.getClass().getSimpleName(), options.getColdStarts(),
+                    options.getColdStartIterations()));
+            return;
+        }
+        int runs = iterations * options.getTrials();
+        long totalRuntimeInSeconds = (runs + (options.isForked() ? runs : 1) /* Including warmup */)
                 * TimeUnit.NANOSECONDS.toSeconds(runtimeInNanos);
         String initMessage = String.format("Preparing %s benchmark for %d seconds with %d iteration(s)",
                 task.getClass().getSimpleName(), totalRuntimeInSeconds, iterations);
@@ -99,11 +120,52 @@ public class BenchmarkMain {
         printer.getStandardOutput().println(expectedFinish);
     }
 
+    /**
+     * Runs the benchmark as a single trial with the given load. Used when the trials are forked into fresh JVMs.
+     *
+     * @param load The load to run the trial with.
+     * @return This benchmark.
+     */
+    private BenchmarkMain asTrial(int load) {
+        this.trialLoad = load;
+        return this;
+    }
+
+    /**
+     * Runs the first iterations with the given load without warming up. Used when measuring the cold start in a fresh
+     * JVM.
+     *
+     * @param load   The load to run the iterations with.
+     * @param launch The startup costs measured since the launch.
+     * @return This benchmark.
+     */
+    private BenchmarkMain asColdStart(int load, ColdStartLaunch launch) {
+        this.trialLoad = load;
+        this.coldStart = launch;
+        return this;
+    }
+
     public void run() {
         PrintStream output = printer.getStandardOutput();
         output.println("Benchmark starting");
         output.println("------------------");
 
+        if (coldStart != null) {
+            /* Warming up would hide the startup costs this run measures */
+            output.println("Cold start: running the first iterations");
+            runner.runColdStart(trialLoad, options.getColdStartIterations(), coldStart, printer);
+            printer.close();
+            return;
+        }
+        if (options.getColdStarts() > 0) {
+            output.println("Launching cold starts");
+            runner.runColdStarts(printer);
+            output.println("------------------");
+            output.println("Benchmark completed successfully");
+            printer.close();
+            return;
+        }
+
         /* Stage 1: Warmup */
         output.println("Stage 1: Warming up");
         runner.warmup(printer);
@@ -116,26 +178,39 @@ public class BenchmarkMain {
 
         /* Stage 3: Run! */
         output.println("Stage 3: Benchmarking");
-        runner.run(printer);
+        if (trialLoad > 0) {
+            runner.runTrial(trialLoad, printer);
+        } else {
+            runner.run(printer);
+        }
         output.println("------------------");
         output.println("Benchmark completed successfully");
+        printer.close();
     }
 
     public static void main(String[] args) throws Exception {
+        /* Measured first, so a cold start knows when main was entered */
+        ColdStartLaunch launch = ColdStartLaunch.enterMain();
         if (args.length == 0) {
             printHelp();
             System.exit(1);
             return;
         }
-        parseArgs(args).run();
+        parseArgs(args, launch).run();
     }
 
-    private static BenchmarkMain parseArgs(String[] args) {
+    private static BenchmarkMain parseArgs(String[] args, ColdStartLaunch launch) {
         long runtimeInSeconds = DEFAULT_RUNTIME_SECONDS;
         int iterations = DEFAULT_ITERATIONS;
-        String classTestName = DEFAULT_CLASS_TEST;
+        String classTestName = null;
         String casesFile = null;
         String taskName = null;
+        BenchmarkOptions options = new BenchmarkOptions();
+        boolean fork = false;
+        int trialLoad = -1;
+        File trialFolder = null;
+        boolean coldStart = false;
+        List<String> trialArgs = new ArrayList<String>();
 
         try {
             for (int i = 0; i < args.length; i++) {
@@ -143,31 +218,63 @@ public class BenchmarkMain {
 
                 if (arg.equals("-i")) {
                     iterations = Integer.parseInt(args[++i]);
+                    trialArgs.addAll(Arrays.asList(arg, args[i]));
+                } else if (arg.equals("-k")) {
+                    options.setTrials(Integer.parseInt(args[++i]));
+                } else if (arg.equals("-cv")) {
+                    options.setMaxCoefficientOfVariation(Double.parseDouble(args[++i]));
+                } else if (arg.equals("-fork")) {
+                    fork = true;
+                } else if (arg.equals("-subtract")) {
+                    options.setSubtractOverhead(true);
+                    trialArgs.add(arg);
+                } else if (arg.equals("-cpu")) {
+                    options.setCpuTime(true);
+                    trialArgs.add(arg);
+                } else if (arg.equals("-locks")) {
+                    options.setContention(true);
+                    trialArgs.add(arg);
+                } else if (arg.equals("-profile")) {
+                    options.setProfileMisses(true);
+                    trialArgs.add(arg);
+                } else if (arg.equals("-raw")) {
+                    options.setRawSamples(true);
+                    trialArgs.add(arg);
+                } else if (arg.equals("-cold")) {
+                    options.setColdStarts(Integer.parseInt(args[++i]));
+                } else if (arg.equals("-first")) {
+                    options.setColdStartIterations(Integer.parseInt(args[++i]));
+                } else if (arg.equals(ColdStartLaunch.FLAG)) {
+                    coldStart = true;
+                    trialLoad = Integer.parseInt(args[++i]);
+                    options.setColdStartIterations(Integer.parseInt(args[++i]));
+                    trialFolder = new File(args[++i]);
+                    launch.setLaunchTime(Long.parseLong(args[++i]));
+                } else if (arg.equals(TrialLauncher.TRIAL_FLAG)) {
+                    trialLoad = Integer.parseInt(args[++i]);
+                    trialFolder = new File(args[++i]);
                 } else if (arg.equals("-cl")) {
-
-                    try {
-
-                        classTestName = args[++i];
-
-                        /** Verification that the class is working */
-                        Class<?> classToTest = Class.forName(classTestName);
-                        Object objectToTest = classToTest.newInstance();
-
-                    } catch (Exception e) {
-                        System.err.println("Error: Failed to load giving class ");
-                        e.printStackTrace(System.err);
-                        System.err.println("---------------------");
-
-                    }
-
+                    classTestName = args[++i];
+                    trialArgs.addAll(Arrays.asList(arg, classTestName));
+                } else if (arg.equals("--plugins")) {
+                    options.setPluginDirectory(new File(args[++i]));
+                    trialArgs.addAll(Arrays.asList(arg, args[i]));
                 } else if (arg.equals("-t")) {
                     runtimeInSeconds = Integer.parseInt(args[++i]);
+                    trialArgs.addAll(Arrays.asList(arg, args[i]));
                 } else if (arg.equals("-f")) {
                     casesFile = args[++i];
+                    trialArgs.addAll(Arrays.asList(arg, casesFile));
                 } else {
                     taskName = args[i];
+                    trialArgs.add(taskName);
                 }
             }
+        } catch (NumberFormatException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("---------------------");
+            printHelp();
+            System.exit(1);
         } catch (ArrayIndexOutOfBoundsException e) {
             System.err.println("Error: Missing parameter");
             System.err.println("---------------------");
@@ -188,9 +295,28 @@ public class BenchmarkMain {
 
             final Map<String, Task> tasks = CaseFileParser.parse(fileStream);
             if (tasks.containsKey(taskName)) {
-                String uniqueClassName = classTestName.split("[.]")[1];
-                return new BenchmarkMain(tasks.get(taskName), TimeUnit.SECONDS.toNanos(runtimeInSeconds), iterations,
-                        taskName, classTestName, uniqueClassName);
+                Task task = tasks.get(taskName);
+                long runtimeInNanos = TimeUnit.SECONDS.toNanos(runtimeInSeconds);
+
+                /* A class given on the command line overrides the generator of the task */
+                if (classTestName == null) {
+                    classTestName = task.generator == null ? DEFAULT_CLASS_TEST : task.generator;
+                }
+
+                if (coldStart) {
+                    return new BenchmarkMain(task, runtimeInNanos, 1, new BenchmarkPrinter(trialFolder),
+                            classTestName, options).asColdStart(trialLoad, launch);
+                }
+                if (trialLoad > 0) {
+                    return new BenchmarkMain(task, runtimeInNanos, 1, new BenchmarkPrinter(trialFolder),
+                            classTestName, options).asTrial(trialLoad);
+                }
+                if (fork || options.getColdStarts() > 0) {
+                    options.setTrialLauncher(new TrialLauncher(getForkCommand(trialArgs)));
+                }
+                String uniqueClassName = classTestName.substring(classTestName.lastIndexOf('.') + 1);
+                return new BenchmarkMain(task, runtimeInNanos, iterations,
+                        new BenchmarkPrinter(uniqueClassName + "_" + taskName), classTestName, options);
             } else {
                 System.err.println(String.format("Error: No task named %s in file %s", taskName, casesFile));
                 System.err.println("Available task names: " + tasks.keySet());
@@ -209,17 +335,37 @@ public class BenchmarkMain {
             System.err.println("---------------------");
             printHelp();
             System.exit(4);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("---------------------");
+            printHelp();
+            System.exit(4);
         }
 
         throw new RuntimeException();
     }
 
+    /**
+     * @return The command to start a fresh JVM with the same JVM arguments, class path and benchmark arguments as
+     * this JVM.
+     */
+    private static List<String> getForkCommand(List<String> benchmarkArgs) {
+        List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(BenchmarkMain.class.getName());
+        command.addAll(benchmarkArgs);
+        return command;
+    }
+
     private static void printHelp() {
 
         System.out.println("Benchmark");
         System.out.println("\tBenchmarks the period, deadline and response times of a Java application.");
         System.out.println("Usage:");
-        System.out.println("\tBenchmark name (fast, slow, continuous) [-i iterations] [-t time] [-cl package.ClassToTest] [-f benchmark-cases]");
+        System.out.println("\tBenchmark name (fast, slow, continuous) [-i iterations] [-t time] [-cl generator] [--plugins dir] [-f benchmark-cases] [-k trials] [-fork] [-cv max] [-subtract] [-cpu] [-locks] [-profile] [-raw] [-cold launches] [-first iterations]");
         System.out.println("");
         System.out.println("\tBuilt-in benchmarks:");
         System.out.println("\t  slow:       A cycle of 1.2 seconds, with a deadline of 0.7 seconds");
@@ -230,8 +376,21 @@ public class BenchmarkMain {
         System.out.println(
                 "\t-i iterations\tThe number of iterations to run with increasing load. Default: 8. Max value: 31");
         System.out.println("\t-t time\t\tSpecifies the runtime per iteration in seconds. Default: 900");
-        System.out.println("\t-cl class\tA path to the class you want to run the benchmark on");
+        System.out.println("\t-cl generator\tThe name of a load generator or a class with a generateLoad(int) method");
+        System.out.println("\t\t\tOverrides the generator of the task. Built-in: random-memory, heap-lifetime, live-set,");
+        System.out.println("\t\t\tfork-join, pipeline, serialization and references");
+        System.out.println("\t--plugins dir\tA directory with jars providing load generators through the ServiceLoader");
         System.out.println("\t-f cases\tA path to a YAML file, which defines the use-case to run");
+        System.out.println("\t-k trials\tThe number of repeated trials to run per load. Default: 1");
+        System.out.println("\t-fork\t\tRuns every trial in a fresh JVM with the same JVM arguments");
+        System.out.println("\t-cv max\t\tThe largest coefficient of variation between trials to trust. Default: 0.1");
+        System.out.println("\t-subtract\tSubtracts the calibrated timer overhead from the deadline and response times");
+        System.out.println("\t-cpu\t\tRecords the CPU time and the time off the CPU of every iteration");
+        System.out.println("\t-locks\t\tRecords the lock contention of the benchmark and generator threads");
+        System.out.println("\t-profile\tSamples the stacks of iterations missing the deadline into <load>_stacks");
+        System.out.println("\t-raw\t\tWrites every sample in order to a <load>_raw file. See benchmark.RawSampleReader");
+        System.out.println("\t-cold launches\tMeasures the startup costs in the given number of fresh JVMs instead");
+        System.out.println("\t-first iterations\tThe number of iterations to run in every cold start. Default: 100");
         System.out.println("");
         System.out.println("Exit codes:");
         System.out.println("\t1\tNot enough parameters were given");
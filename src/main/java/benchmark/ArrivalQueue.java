@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded first-in-first-out queue of primitive timestamps. The timestamps are stored in a ring buffer, so requests
+ * can be queued and taken without allocating any objects.
+ *
+ * @author jepeders
+ */
+class ArrivalQueue {
+
+    private final long[] ring;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private int head;
+    private int size;
+
+    ArrivalQueue(int capacity) {
+        this.ring = new long[capacity];
+    }
+
+    /**
+     * Adds a timestamp to the queue if there is room for it.
+     *
+     * @return True if the timestamp was added, false if the queue was full.
+     */
+    boolean offer(long timestamp) {
+        lock.lock();
+        try {
+            if (size == ring.length) {
+                return false;
+            }
+            enqueue(timestamp);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a timestamp to the queue, waiting for room if the queue is full.
+     */
+    void put(long timestamp) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (size == ring.length) {
+                notFull.await();
+            }
+            enqueue(timestamp);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the oldest timestamp from the queue, waiting for one to arrive if the queue is empty.
+     */
+    long take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                notEmpty.await();
+            }
+            final long timestamp = ring[head];
+            head = (head + 1) % ring.length;
+            size--;
+            notFull.signal();
+            return timestamp;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(long timestamp) {
+        ring[(head + size) % ring.length] = timestamp;
+        size++;
+        notEmpty.signal();
+    }
+
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import java.io.File;
+
+/**
+ * Options that control how a {@link BenchmarkRunner} executes the iterations of a task. The options default to a
+ * single trial per load, executed in the current JVM.
+ *
+ * @author jepeders
+ */
+public class BenchmarkOptions {
+
+    public static final double DEFAULT_MAX_COEFFICIENT_OF_VARIATION = 0.1;
+    public static final int DEFAULT_COLD_START_ITERATIONS = 100;
+
+    private int trials = 1;
+    private TrialLauncher trialLauncher;
+    private double maxCoefficientOfVariation = DEFAULT_MAX_COEFFICIENT_OF_VARIATION;
+    private File pluginDirectory;
+    private boolean subtractOverhead;
+    private boolean cpuTime;
+    private boolean rawSamples;
+    private boolean contention;
+    private boolean profileMisses;
+    private int coldStarts;
+    private int coldStartIterations = DEFAULT_COLD_START_ITERATIONS;
+
+    /**
+     * @return The number of repeated trials to run per load.
+     */
+    public int getTrials() {
+        return trials;
+    }
+
+    /**
+     * Sets the number of trials to run per load. The histograms of the trials are aggregated and the spread of the
+     * percentiles between the trials are reported.
+     *
+     * @param trials The number of trials. Must be at least 1.
+     * @return These options.
+     */
+    public BenchmarkOptions setTrials(int trials) {
+        if (trials < 1) {
+            throw new IllegalArgumentException("Cannot run less than 1 trial");
+        }
+        this.trials = trials;
+        return this;
+    }
+
+    /**
+     * @return The launcher used to run trials in forked JVMs or null if the trials are run in this JVM.
+     */
+    public TrialLauncher getTrialLauncher() {
+        return trialLauncher;
+    }
+
+    /**
+     * Runs every trial in a fresh JVM started by the given launcher.
+     *
+     * @param trialLauncher The launcher to fork the trials with or null to run the trials in this JVM.
+     * @return These options.
+     */
+    public BenchmarkOptions setTrialLauncher(TrialLauncher trialLauncher) {
+        this.trialLauncher = trialLauncher;
+        return this;
+    }
+
+    public boolean isForked() {
+        return trialLauncher != null;
+    }
+
+    /**
+     * @return The largest coefficient of variation between trials before a load is flagged as unstable.
+     */
+    public double getMaxCoefficientOfVariation() {
+        return maxCoefficientOfVariation;
+    }
+
+    public BenchmarkOptions setMaxCoefficientOfVariation(double maxCoefficientOfVariation) {
+        if (maxCoefficientOfVariation <= 0) {
+            throw new IllegalArgumentException("The coefficient of variation must be positive");
+        }
+        this.maxCoefficientOfVariation = maxCoefficientOfVariation;
+        return this;
+    }
+
+    /**
+     * @return The directory with plugin jars providing load generators or null if only the class path is used.
+     */
+    public File getPluginDirectory() {
+        return pluginDirectory;
+    }
+
+    public BenchmarkOptions setPluginDirectory(File pluginDirectory) {
+        this.pluginDirectory = pluginDirectory;
+        return this;
+    }
+
+    /**
+     * @return True if the overhead measured by the {@link TimerCalibration} is subtracted from the histograms.
+     */
+    public boolean isSubtractOverhead() {
+        return subtractOverhead;
+    }
+
+    public BenchmarkOptions setSubtractOverhead(boolean subtractOverhead) {
+        this.subtractOverhead = subtractOverhead;
+        return this;
+    }
+
+    /**
+     * @return True if the CPU time of the benchmark thread is recorded next to the wall time of every iteration.
+     */
+    public boolean isCpuTime() {
+        return cpuTime;
+    }
+
+    public BenchmarkOptions setCpuTime(boolean cpuTime) {
+        this.cpuTime = cpuTime;
+        return this;
+    }
+
+    /**
+     * @return True if the lock and monitor contention of the benchmark and generator threads is recorded.
+     */
+    public boolean isContention() {
+        return contention;
+    }
+
+    public BenchmarkOptions setContention(boolean contention) {
+        this.contention = contention;
+        return this;
+    }
+
+    /**
+     * @return True if the stack of the benchmark thread is sampled while iterations overrun their deadline.
+     */
+    public boolean isProfileMisses() {
+        return profileMisses;
+    }
+
+    public BenchmarkOptions setProfileMisses(boolean profileMisses) {
+        this.profileMisses = profileMisses;
+        return this;
+    }
+
+    /**
+     * @return True if every sample is captured in a raw sample file next to the histograms.
+     */
+    public boolean isRawSamples() {
+        return rawSamples;
+    }
+
+    public BenchmarkOptions setRawSamples(boolean rawSamples) {
+        this.rawSamples = rawSamples;
+        return this;
+    }
+
+    /**
+     * @return The number of fresh JVMs to launch to measure the cold start or 0 to run the benchmark as usual.
+     */
+    public int getColdStarts() {
+        return coldStarts;
+    }
+
+    /**
+     * Measures the startup costs of the task in the given number of fresh JVMs instead of running the benchmark. Each
+     * JVM is started by the trial launcher, which must be set as well.
+     *
+     * @param coldStarts The number of JVMs to launch.
+     * @return These options.
+     */
+    public BenchmarkOptions setColdStarts(int coldStarts) {
+        if (coldStarts < 1) {
+            throw new IllegalArgumentException("Cannot launch less than 1 cold start");
+        }
+        this.coldStarts = coldStarts;
+        return this;
+    }
+
+    /**
+     * @return The number of iterations to run without warm-up in every cold start.
+     */
+    public int getColdStartIterations() {
+        return coldStartIterations;
+    }
+
+    public BenchmarkOptions setColdStartIterations(int coldStartIterations) {
+        if (coldStartIterations < 1) {
+            throw new IllegalArgumentException("A cold start must run at least 1 iteration");
+        }
+        this.coldStartIterations = coldStartIterations;
+        return this;
+    }
+
+}
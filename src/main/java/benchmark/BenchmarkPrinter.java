@@ -1,16 +1,26 @@
 package benchmark;
 
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Calendar;
 
 /**
  * Copyright (c) 2015 European Organisation for Nuclear Research (CERN), All Rights Reserved.
  */
 
-public class BenchmarkPrinter {
+/**
+ * Creates the files the results of a benchmark are written to. The files are written through buffered
+ * {@link FileChannel}s, so every output must be closed once it is written, and the log is closed with the printer.
+ *
+ * @author jepeders
+ */
+public class BenchmarkPrinter implements Closeable {
 
     public static final File DEFAULT_OUTPUT_FOLDER = new File(String.format("%1$tY%1$tm%1$td-%1$tT",
             Calendar.getInstance()));
@@ -18,7 +28,12 @@ public class BenchmarkPrinter {
     private static final String HICCUP_OUTPUT_FORMAT = "%d_response";
     private static final String DEADLINE_OUTPUT_FORMAT = "%d_deadline";
     private static final String PERIOD_OUTPUT_FORMAT = "%d_period";
+    private static final String NAMED_OUTPUT_FORMAT = "%d_%s";
+    private static final String TRIALS_OUTPUT_FORMAT = "%d_trials";
+    private static final String TRIAL_FOLDER_FORMAT = "trials/%d_%d";
+    private static final String CALIBRATION_OUTPUT_NAME = "calibration";
     private static final String LOG_OUTPUT_NAME = "log";
+    private static final int BUFFER_SIZE = 1 << 16;
 
     private final File folder;
     private final PrintStream logPrinter;
@@ -35,7 +50,12 @@ public class BenchmarkPrinter {
             }
         }
 
-        logPrinter = getPrintStreamForFileName(LOG_OUTPUT_NAME);
+        /* The log is flushed on every line, so the progress can be followed while the benchmark is running */
+        logPrinter = openPrintStream(LOG_OUTPUT_NAME, true);
+    }
+
+    public File getFolder() {
+        return folder;
     }
 
     public PrintStream getStandardOutput() {
@@ -58,15 +78,66 @@ public class BenchmarkPrinter {
         return getOutputFromFormat(PERIOD_OUTPUT_FORMAT, load);
     }
 
+    /**
+     * @return The output for a histogram or report with the given name, recorded with the given load.
+     */
+    public PrintStream getOutput(String name, int load) {
+        return getPrintStreamForFileName(String.format(NAMED_OUTPUT_FORMAT, load, name));
+    }
+
+    /**
+     * @return The output for a file with the given name in the output folder.
+     */
+    public PrintStream getOutput(String name) {
+        return getPrintStreamForFileName(name);
+    }
+
+    public PrintStream getCalibrationOutput() {
+        return getPrintStreamForFileName(CALIBRATION_OUTPUT_NAME);
+    }
+
+    public PrintStream getTrialsOutput(int load) {
+        return getOutputFromFormat(TRIALS_OUTPUT_FORMAT, load);
+    }
+
+    /**
+     * @return A printer writing to a sub-folder with the given name, which must be closed when done.
+     */
+    public BenchmarkPrinter getSubPrinter(String name) {
+        return new BenchmarkPrinter(new File(folder, name));
+    }
+
+    /**
+     * @return The folder to store the output of a trial, which is run in a forked JVM.
+     */
+    public File getTrialFolder(int load, int trial) {
+        return new File(folder, String.format(TRIAL_FOLDER_FORMAT, load, trial));
+    }
+
     private PrintStream getPrintStreamForFileName(String name) {
+        return openPrintStream(name, false);
+    }
+
+    private PrintStream openPrintStream(String name, boolean autoFlush) {
         File file = new File(folder, name);
         try {
-            return new PrintStream(file);
-        } catch (FileNotFoundException e) {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            return new PrintStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE),
+                    autoFlush);
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Closes the log.
+     */
+    @Override
+    public void close() {
+        logPrinter.close();
+    }
+
     public static BenchmarkPrinter ofTemp() {
         try {
             File tmpFile;
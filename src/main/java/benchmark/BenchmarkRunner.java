@@ -4,8 +4,12 @@ package benchmark;
  * Copyright (c) 2015 European Organisation for Nuclear Research (CERN), All Rights Reserved.
  */
 
+import java.io.File;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 
+import model.SlaVerdict;
 import model.Task;
 import model.TaskIteration;
 
@@ -20,47 +24,351 @@ public class BenchmarkRunner {
     public final TaskRunner taskRunner;
     private final LoadIterator loadIteratorPrototype;
     private final int iterations;
+    private final BenchmarkOptions options;
+    private final Task task;
+    private final List<Variant> variants = new ArrayList<Variant>();
+    private boolean parallelSweep;
 
-    public BenchmarkRunner(Task task, String classTestName, long runtimeInNanos, int loadIterations) {
+    public BenchmarkRunner(Task task, String generatorName, long runtimeInNanos, int loadIterations) {
+        this(task, generatorName, runtimeInNanos, loadIterations, new BenchmarkOptions());
+    }
+
+    /**
+     * Creates a runner for the given task.
+     *
+     * @param task           The task to run.
+     * @param generatorName  The name of the load generator or the fully qualified name of a generator class.
+     * @param runtimeInNanos The runtime of each iteration.
+     * @param loadIterations The number of times the load should double.
+     * @param options        The options for running the iterations.
+     * @throws IllegalArgumentException If the generator could not be created.
+     */
+    public BenchmarkRunner(Task task, String generatorName, long runtimeInNanos, int loadIterations,
+                           BenchmarkOptions options) {
         this.runtimeInNanos = runtimeInNanos;
-        Class<?> classToTest;
-        Object objectForTest;
-        try {
-            classToTest = Class.forName(classTestName);
-            objectForTest = classToTest.newInstance();
-            
-            
-        } catch (Exception e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-            objectForTest = new RandomMemoryLoadGenerator();
-            classToTest = objectForTest.getClass();
-        }
-
-        this.taskRunner = new TaskRunner(task, classToTest, objectForTest, runtimeInNanos);
+        this.options = options;
+        this.task = task;
+
+        /* An open loop runs a generator in each worker thread */
+        int workers = 1;
+        if (task.getArrival() != null) {
+            task.getArrival().validate();
+            workers = task.getArrival().workers;
+        }
+        if (task.getBatching() != null) {
+            task.getBatching().validate();
+        }
+        if (task.getSla() != null) {
+            task.getSla().validate(task.deadlineInNanos);
+        }
+        if (task.getConvergence() != null) {
+            task.getConvergence().validate();
+        }
+        if (task.getInterference() != null) {
+            task.getInterference().validate();
+            variants.addAll(InterferenceVariant.of(task.getInterference()));
+        }
+        GeneratorRegistry registry = GeneratorRegistry.load(options.getPluginDirectory());
+        Workload[] workloads = new Workload[workers];
+        for (int i = 0; i < workers; i++) {
+            workloads[i] = registry.create(generatorName, task.getParameters());
+        }
+        addParallelismVariants(workloads);
+        if (!variants.isEmpty() && (options.getTrials() > 1 || options.isForked())) {
+            throw new IllegalArgumentException("Sweeps over variants cannot be combined with repeated or forked trials");
+        }
+        this.taskRunner = new TaskRunner(task, workloads, runtimeInNanos);
+        if (options.isCpuTime()) {
+            taskRunner.recordCpuTime();
+        }
+        if (options.isContention()) {
+            taskRunner.recordContention();
+        }
+        if (options.isProfileMisses()) {
+            taskRunner.profileMisses();
+        }
         this.iterations = loadIterations;
         this.loadIteratorPrototype = task.getLoadIterator(loadIterations);
     }
 
+    /**
+     * Sweeps over the levels of parallelism if the generator splits its work across threads.
+     */
+    private void addParallelismVariants(Workload[] workloads) {
+        List<ParallelGenerator> generators = new ArrayList<ParallelGenerator>();
+        for (Workload workload : workloads) {
+            if (workload.getGenerator() instanceof ParallelGenerator) {
+                generators.add((ParallelGenerator) workload.getGenerator());
+            }
+        }
+        if (generators.isEmpty() || generators.get(0).getParallelismLevels().length < 2) {
+            return;
+        }
+        if (!variants.isEmpty()) {
+            throw new IllegalArgumentException("Parallelism cannot be swept together with interference");
+        }
+        variants.addAll(ParallelismVariant.of(generators));
+        parallelSweep = true;
+    }
+
     public void run(BenchmarkPrinter printer) {
         PrintStream writer = printer.getStandardOutput();
         int index = 0;
         LoadIterator loadIterator = loadIteratorPrototype.copy();
-        while (loadIterator.hasNext()) {
-            int load = loadIterator.next();
-            writer.println(String.format("\tRunning iteration %d of %d with %d load", ++index, iterations, load));
-            TaskIteration iteration = taskRunner.run(load);
-            iteration.write(printer);
+        if (task.getArrival() != null) {
+            writer.println("\tRunning in an open loop with " + task.getArrival());
+        } else if (task.getBatching() != null) {
+            writer.println("\tSampling in " + task.getBatching());
+        }
+        if (!variants.isEmpty()) {
+            runVariants(printer);
+            return;
+        }
+        if (options.isRawSamples()) {
+            taskRunner.captureSamples(printer.getFolder());
+        }
+        /* The results are written by another thread, so the next load can start right away */
+        ResultWriter results = new ResultWriter();
+        ScalingReport report = new ScalingReport(printer.getFolder().getName(), task.deadlineInNanos);
+        try {
+            while (loadIterator.hasNext()) {
+                int load = loadIterator.next();
+                writer.println(String.format("\tRunning iteration %d of %d with %d load", ++index, iterations, load));
+                if (options.getTrials() == 1 && !options.isForked()) {
+                    results.submit(write(taskRunner.run(load), printer, report));
+                } else {
+                    runTrials(load, printer, results, report);
+                }
+            }
+        } finally {
+            results.close();
+        }
+        writeReport(report, printer);
+    }
+
+    /**
+     * Runs every load once for each variant. The results of each variant are written to a sub-folder named after the
+     * variant, and the comparison of the variants to the <code>sweep</code> file of each load.
+     */
+    private void runVariants(BenchmarkPrinter printer) {
+        PrintStream writer = printer.getStandardOutput();
+        int index = 0;
+        LoadIterator loadIterator = loadIteratorPrototype.copy();
+        BenchmarkPrinter[] printers = new BenchmarkPrinter[variants.size()];
+        ScalingReport[] reports = new ScalingReport[variants.size()];
+        for (int i = 0; i < printers.length; i++) {
+            printers[i] = printer.getSubPrinter(variants.get(i).getName());
+            reports[i] = new ScalingReport(variants.get(i).getName(), task.deadlineInNanos);
+        }
+
+        ResultWriter results = new ResultWriter();
+        try {
+            while (loadIterator.hasNext()) {
+                final int load = loadIterator.next();
+                writer.println(String.format("\tRunning iteration %d of %d with %d load", ++index, iterations, load));
+                final SweepReport sweep = new SweepReport(load, parallelSweep);
+                for (int i = 0; i < printers.length; i++) {
+                    Variant variant = variants.get(i);
+                    writer.println("\t\tRunning with " + variant);
+                    if (options.isRawSamples()) {
+                        taskRunner.captureSamples(printers[i].getFolder());
+                    }
+                    variant.begin(load);
+                    TaskIteration iteration;
+                    try {
+                        iteration = taskRunner.run(load);
+                    } finally {
+                        variant.end(load);
+                    }
+                    sweep.add(variant, iteration);
+                    results.submit(write(iteration, printers[i], reports[i]));
+                }
+                final BenchmarkPrinter sweepPrinter = printer;
+                results.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        PrintStream output = sweepPrinter.getOutput(SweepReport.OUTPUT_NAME, load);
+                        sweep.write(output);
+                        output.close();
+                    }
+                });
+            }
+        } finally {
+            results.close();
         }
+        for (int i = 0; i < printers.length; i++) {
+            writeReport(reports[i], printers[i]);
+            printers[i].close();
+        }
+    }
+
+    private Runnable write(final TaskIteration iteration, final BenchmarkPrinter printer,
+                           final ScalingReport report) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                /* Only the closed loop checks the SLA while running, the other results are checked when done */
+                if (task.getSla() != null && iteration.getVerdict() == null) {
+                    iteration.setVerdict(SlaVerdict.of(task.getSla(), task.deadlineInNanos, iteration.load,
+                            iteration.getDeadlineHistogram(), iteration.getPeriodHistogram(),
+                            iteration.getHiccupHistogram()));
+                }
+                iteration.write(printer);
+                report.add(iteration);
+            }
+        };
+    }
+
+    /**
+     * Runs a number of trials with the same load, either in this JVM or in forked JVMs, and writes the aggregated
+     * histograms along with the statistics on the variance between the trials.
+     */
+    private void runTrials(final int load, final BenchmarkPrinter printer, ResultWriter results,
+                           ScalingReport report) {
+        PrintStream writer = printer.getStandardOutput();
+        List<TaskIteration> trials = new ArrayList<TaskIteration>();
+        for (int trial = 1; trial <= options.getTrials(); trial++) {
+            writer.println(String.format("\t\tRunning trial %d of %d%s", trial, options.getTrials(),
+                    options.isForked() ? " in a forked JVM" : ""));
+            if (options.isForked()) {
+                trials.add(options.getTrialLauncher().launch(load, printer.getTrialFolder(load, trial)));
+            } else {
+                trials.add(taskRunner.run(load));
+            }
+        }
+
+        results.submit(write(TaskIteration.merge(trials), printer, report));
+        if (trials.size() > 1) {
+            final List<TaskIteration> finishedTrials = trials;
+            final double maxCoefficientOfVariation = options.getMaxCoefficientOfVariation();
+            results.submit(new Runnable() {
+                @Override
+                public void run() {
+                    writeTrialStatistics(load, finishedTrials, maxCoefficientOfVariation, printer);
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes the report on how the latency scaled with the load to the <code>report.html</code> and
+     * <code>report.csv</code> files.
+     */
+    private static void writeReport(ScalingReport report, BenchmarkPrinter printer) {
+        PrintStream html = printer.getOutput(ScalingReport.HTML_OUTPUT_NAME);
+        report.writeHtml(html);
+        html.close();
+        PrintStream csv = printer.getOutput(ScalingReport.CSV_OUTPUT_NAME);
+        report.writeCsv(csv);
+        csv.close();
+        printer.getStandardOutput().println("\tScaling report written to " + ScalingReport.HTML_OUTPUT_NAME);
+    }
+
+    private static void writeTrialStatistics(int load, List<TaskIteration> trials, double maxCoefficientOfVariation,
+                                             BenchmarkPrinter printer) {
+        TrialStatistics statistics = TrialStatistics.of(trials, maxCoefficientOfVariation);
+        PrintStream output = printer.getTrialsOutput(load);
+        statistics.write(output);
+        output.close();
+        if (statistics.isUnstable()) {
+            printer.getStandardOutput().println(String.format("\tWARNING: The variance between trials with %d load " +
+                    "is too high to trust. See %d_trials", load, load));
+        }
+    }
+
+    /**
+     * Runs a single trial with the given load and writes the results to the printer and to an encoded histogram file, so the
+     * results can be read by the JVM which forked this trial.
+     *
+     * @param load    The load to run the trial with.
+     * @param printer The printer for the folder of the trial.
+     */
+    public void runTrial(int load, BenchmarkPrinter printer) {
+        if (options.isRawSamples()) {
+            taskRunner.captureSamples(printer.getFolder());
+        }
+        TaskIteration iteration = taskRunner.run(load);
+        iteration.write(printer);
+        TrialLauncher.writeTrial(iteration, new File(printer.getFolder(), TrialLauncher.TRIAL_LOG_NAME));
+    }
+
+    /**
+     * Launches the number of cold starts given in the options, each in a fresh JVM running the first iterations with
+     * the first load of the task. The deadlines of the first iterations of all launches are written as the results of
+     * the load, and the startup costs of every launch to the <code>coldstart.csv</code> file.
+     *
+     * @param printer The printer to write the results to.
+     */
+    public void runColdStarts(BenchmarkPrinter printer) {
+        PrintStream writer = printer.getStandardOutput();
+        int load = loadIteratorPrototype.copy().next();
+        ColdStartReport report = new ColdStartReport();
+        for (int launch = 1; launch <= options.getColdStarts(); launch++) {
+            writer.println(String.format("\tLaunching cold start %d of %d with %d load", launch,
+                    options.getColdStarts(), load));
+            report.add(options.getTrialLauncher().launchColdStart(load, options.getColdStartIterations(),
+                    printer.getTrialFolder(load, launch)));
+        }
+        report.getIterations().write(printer);
+        report.writeSummary(writer);
+        PrintStream csv = printer.getOutput(ColdStartReport.CSV_OUTPUT_NAME);
+        report.writeCsv(csv);
+        csv.close();
+    }
+
+    /**
+     * Runs the first iterations of a cold start without warming up, and writes the results along with the startup
+     * costs, so they can be read by the JVM which launched this one.
+     *
+     * @param load       The load to run the iterations with.
+     * @param iterations The number of iterations to run.
+     * @param launch     The startup costs measured so far.
+     * @param printer    The printer for the folder of the launch.
+     */
+    public void runColdStart(int load, int iterations, ColdStartLaunch launch, BenchmarkPrinter printer) {
+        TaskIteration iteration = taskRunner.runFirst(load, iterations, launch);
+        iteration.write(printer);
+        TrialLauncher.writeTrial(iteration, new File(printer.getFolder(), TrialLauncher.TRIAL_LOG_NAME));
+        launch.write(new File(printer.getFolder(), ColdStartLaunch.RESULTS_NAME));
     }
 
     public long getRuntimeInNanos() {
         return runtimeInNanos;
     }
 
+    /**
+     * Measures the overhead of the timers on this host, stores it in the <code>calibration</code> file and subtracts it
+     * from the following runs if the options say so. The calibration is done before the warm-up, so the warm-up
+     * compiles the timed loop for the generator of the task.
+     */
+    private void calibrate(BenchmarkPrinter printer) {
+        PrintStream writer = printer.getStandardOutput();
+        writer.println("Calibrating timers");
+        TimerCalibration calibration = TimerCalibration.measure(task);
+        calibration.write(writer);
+
+        PrintStream output = printer.getCalibrationOutput();
+        calibration.write(output);
+        output.println("Overhead subtracted from deadline and response: " + options.isSubtractOverhead());
+        output.close();
+
+        if (options.isSubtractOverhead()) {
+            writer.println("Subtracting the empty iteration overhead and sleep overshoot from the histograms");
+            taskRunner.subtractOverhead(calibration);
+        }
+        writer.println();
+    }
+
     public void warmup(BenchmarkPrinter printer) {
         PrintStream writer = printer.getStandardOutput();
 
+        if (options.isForked()) {
+            writer.println("Calibration and warm-up is done in each forked trial\n");
+            return;
+        }
+
+        calibrate(printer);
+
         writer.println("Warming up ");
         long durationInNanos = taskRunner.warmup(1);
         taskRunner.run(0); /* Loads the classes in the run method */
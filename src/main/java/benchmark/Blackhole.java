@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+/**
+ * A sink for values computed by a load generator, which keeps the just-in-time compiler from removing the computation
+ * as dead code. The idea is taken from the <code>Blackhole</code> of the Java Microbenchmark Harness (JMH).
+ * <p>
+ * Primitive values are compared against two volatile fields which are never equal. The compiler cannot prove that the
+ * comparison fails, so the value has to be computed, but the branch is never taken. Objects are stored in a plain
+ * field, which makes them escape and forces their allocation. None of the methods allocate.
+ * </p>
+ * <p>
+ * A blackhole is not thread-safe and should only be used by a single generator thread.
+ * </p>
+ *
+ * @author jepeders
+ */
+public final class Blackhole {
+
+    /* Never equal, but the compiler cannot know since they are volatile */
+    public volatile long long1 = 1;
+    public volatile long long2 = 2;
+    public volatile double double1 = 1;
+    public volatile double double2 = 2;
+
+    /* A plain field the consumed objects escape to */
+    public Object object;
+
+    public void consume(long value) {
+        if (value == long1 & value == long2) {
+            throw new IllegalStateException("The blackhole is corrupted");
+        }
+    }
+
+    public void consume(double value) {
+        if (value == double1 & value == double2) {
+            throw new IllegalStateException("The blackhole is corrupted");
+        }
+    }
+
+    public void consume(Object value) {
+        object = value;
+    }
+
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import model.TaskIteration;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+/**
+ * The startup costs of a task in one freshly launched JVM. The JVM which launches the benchmark passes the wall-clock
+ * time of the launch, and the launched JVM measures how long it took to reach <code>main</code> and the first
+ * iteration of the task, how many classes were loaded along the way, and the deadlines of the first iterations before
+ * any warm-up. The measurements are written to a properties file, which is read back by the launching JVM.
+ * <p>
+ * Times which could not be measured are -1.
+ * </p>
+ *
+ * @author jepeders
+ */
+public class ColdStartLaunch {
+
+    public static final String FLAG = "-coldstart";
+    public static final String RESULTS_NAME = "coldstart.properties";
+
+    /** The wall-clock time in milliseconds at which the launching JVM started the process. */
+    public long launchInMillis = -1;
+    /** The time in milliseconds from the launch until the JVM was started. */
+    public long timeToJvmStartInMillis = -1;
+    /** The time in milliseconds from the launch until <code>main</code> was entered. */
+    public long timeToMainInMillis = -1;
+    /** The time in nanoseconds from the launch until the first iteration started. */
+    public long timeToFirstIterationInNanos = -1;
+    /** The deadline of the first iteration in nanoseconds. */
+    public long firstIterationInNanos = -1;
+    /** The number of classes loaded when <code>main</code> was entered. */
+    public long classesAtMain = -1;
+    /** The number of classes loaded after the first iteration. */
+    public long classesAfterFirstIteration = -1;
+    /** The number of classes loaded after the last iteration. */
+    public long classesAfterLastIteration = -1;
+    /** The time in milliseconds spent compiling just-in-time until the last iteration. */
+    public long compilationInMillis = -1;
+
+    /** The results of the iterations. Not part of the properties file. */
+    public TaskIteration iteration;
+
+    private long mainInMillis = -1;
+    private long mainInNanos = -1;
+
+    /**
+     * Captures the time and the number of loaded classes as <code>main</code> is entered. Must be called before
+     * anything else in <code>main</code>.
+     *
+     * @return A launch which has entered <code>main</code>.
+     */
+    public static ColdStartLaunch enterMain() {
+        final ColdStartLaunch launch = new ColdStartLaunch();
+        launch.mainInMillis = System.currentTimeMillis();
+        launch.mainInNanos = System.nanoTime();
+        launch.classesAtMain = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+        return launch;
+    }
+
+    /**
+     * Sets the time the process was launched at, as measured by the launching JVM.
+     *
+     * @param launchInMillis The wall-clock time of the launch in milliseconds.
+     */
+    public void setLaunchTime(long launchInMillis) {
+        this.launchInMillis = launchInMillis;
+        this.timeToJvmStartInMillis = ManagementFactory.getRuntimeMXBean().getStartTime() - launchInMillis;
+        this.timeToMainInMillis = mainInMillis - launchInMillis;
+    }
+
+    /**
+     * Records the first iteration. Called right after the first iteration, outside the timed window.
+     *
+     * @param startInNanos    The {@link System#nanoTime()} at which the first iteration started.
+     * @param deadlineInNanos The deadline of the first iteration.
+     */
+    void firstIteration(long startInNanos, long deadlineInNanos) {
+        this.firstIterationInNanos = deadlineInNanos;
+        this.classesAfterFirstIteration = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+        if (timeToMainInMillis >= 0) {
+            this.timeToFirstIterationInNanos = timeToMainInMillis * 1000000 + startInNanos - mainInNanos;
+        }
+    }
+
+    /**
+     * Records the state after the last iteration.
+     */
+    void lastIteration() {
+        this.classesAfterLastIteration = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+        final CompilationMXBean compilationBean = ManagementFactory.getCompilationMXBean();
+        if (compilationBean != null && compilationBean.isCompilationTimeMonitoringSupported()) {
+            this.compilationInMillis = compilationBean.getTotalCompilationTime();
+        }
+    }
+
+    /**
+     * Writes the measurements to a properties file.
+     *
+     * @param file The file to write to.
+     */
+    public void write(File file) {
+        final Properties properties = new Properties();
+        properties.setProperty("launchInMillis", Long.toString(launchInMillis));
+        properties.setProperty("timeToJvmStartInMillis", Long.toString(timeToJvmStartInMillis));
+        properties.setProperty("timeToMainInMillis", Long.toString(timeToMainInMillis));
+        properties.setProperty("timeToFirstIterationInNanos", Long.toString(timeToFirstIterationInNanos));
+        properties.setProperty("firstIterationInNanos", Long.toString(firstIterationInNanos));
+        properties.setProperty("classesAtMain", Long.toString(classesAtMain));
+        properties.setProperty("classesAfterFirstIteration", Long.toString(classesAfterFirstIteration));
+        properties.setProperty("classesAfterLastIteration", Long.toString(classesAfterLastIteration));
+        properties.setProperty("compilationInMillis", Long.toString(compilationInMillis));
+        try {
+            final OutputStream output = new FileOutputStream(file);
+            try {
+                properties.store(output, "Cold start of the benchmark");
+            } finally {
+                output.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the measurements written by a launched JVM.
+     *
+     * @param file The properties file to read.
+     * @return The measurements of the launch.
+     * @throws IllegalStateException If the file could not be read.
+     */
+    public static ColdStartLaunch read(File file) {
+        final Properties properties = new Properties();
+        try {
+            final InputStream input = new FileInputStream(file);
+            try {
+                properties.load(input);
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read cold start results from " + file, e);
+        }
+        final ColdStartLaunch launch = new ColdStartLaunch();
+        launch.launchInMillis = get(properties, "launchInMillis");
+        launch.timeToJvmStartInMillis = get(properties, "timeToJvmStartInMillis");
+        launch.timeToMainInMillis = get(properties, "timeToMainInMillis");
+        launch.timeToFirstIterationInNanos = get(properties, "timeToFirstIterationInNanos");
+        launch.firstIterationInNanos = get(properties, "firstIterationInNanos");
+        launch.classesAtMain = get(properties, "classesAtMain");
+        launch.classesAfterFirstIteration = get(properties, "classesAfterFirstIteration");
+        launch.classesAfterLastIteration = get(properties, "classesAfterLastIteration");
+        launch.compilationInMillis = get(properties, "compilationInMillis");
+        return launch;
+    }
+
+    private static long get(Properties properties, String key) {
+        final String value = properties.getProperty(key);
+        return value == null ? -1 : Long.parseLong(value);
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import model.TaskIteration;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A report on the startup costs over a number of cold starts. The report shows the distribution of the startup costs
+ * from launch to launch, which is the startup latency budget of the task, and is written as a CSV file with one row
+ * per launch.
+ *
+ * @author jepeders
+ */
+public class ColdStartReport {
+
+    public static final String CSV_OUTPUT_NAME = "coldstart.csv";
+
+    private static final double[] PERCENTILES = {0, 50, 90, 100};
+
+    private final List<ColdStartLaunch> launches = new ArrayList<ColdStartLaunch>();
+
+    public void add(ColdStartLaunch launch) {
+        launches.add(launch);
+    }
+
+    /**
+     * @return The results of the iterations of all launches combined.
+     */
+    public TaskIteration getIterations() {
+        final List<TaskIteration> iterations = new ArrayList<TaskIteration>();
+        for (ColdStartLaunch launch : launches) {
+            iterations.add(launch.iteration);
+        }
+        return TaskIteration.merge(iterations);
+    }
+
+    /**
+     * Writes the minimum, median, 90th percentile and maximum of the startup costs over the launches.
+     */
+    public void writeSummary(PrintStream output) {
+        final long[] timeToJvmStart = new long[launches.size()];
+        final long[] timeToMain = new long[launches.size()];
+        final long[] timeToFirstIteration = new long[launches.size()];
+        final long[] firstIteration = new long[launches.size()];
+        final long[] classes = new long[launches.size()];
+        for (int i = 0; i < launches.size(); i++) {
+            final ColdStartLaunch launch = launches.get(i);
+            timeToJvmStart[i] = launch.timeToJvmStartInMillis;
+            timeToMain[i] = launch.timeToMainInMillis;
+            timeToFirstIteration[i] = launch.timeToFirstIterationInNanos / 1000000;
+            firstIteration[i] = launch.firstIterationInNanos;
+            classes[i] = launch.classesAfterFirstIteration;
+        }
+        output.println(String.format("Cold start over %d launches (min, p50, p90, max):", launches.size()));
+        writeDistribution(output, "Time to JVM start (ms):", timeToJvmStart);
+        writeDistribution(output, "Time to main (ms):", timeToMain);
+        writeDistribution(output, "Time to first iteration (ms):", timeToFirstIteration);
+        writeDistribution(output, "First iteration (ns):", firstIteration);
+        writeDistribution(output, "Classes at first iteration:", classes);
+    }
+
+    private static void writeDistribution(PrintStream output, String name, long[] values) {
+        final long[] sorted = Arrays.copyOf(values, values.length);
+        Arrays.sort(sorted);
+        final StringBuilder line = new StringBuilder(String.format("\t%-32s", name));
+        for (double percentile : PERCENTILES) {
+            /* The nearest rank */
+            final int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+            line.append(String.format(" %12d", sorted.length == 0 ? -1 : sorted[Math.max(0, rank - 1)]));
+        }
+        output.println(line);
+    }
+
+    public void writeCsv(PrintStream output) {
+        output.println("launch,time_to_jvm_start_ms,time_to_main_ms,time_to_first_iteration_ns,first_iteration_ns,"
+                + "classes_at_main,classes_after_first_iteration,classes_after_last_iteration,compilation_ms,"
+                + "deadline_p50,deadline_p99,deadline_max");
+        for (int i = 0; i < launches.size(); i++) {
+            final ColdStartLaunch launch = launches.get(i);
+            final Histogram deadline = launch.iteration.getDeadlineHistogram();
+            output.println(String.format("%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d", i + 1, launch.timeToJvmStartInMillis,
+                    launch.timeToMainInMillis, launch.timeToFirstIterationInNanos, launch.firstIterationInNanos,
+                    launch.classesAtMain, launch.classesAfterFirstIteration, launch.classesAfterLastIteration,
+                    launch.compilationInMillis, deadline.getValueAtPercentile(50), deadline.getValueAtPercentile(99),
+                    deadline.getMaxValue()));
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * A recorder like the {@link MetricRecorder} that can be written to by many threads at once, in constant time O(1)
+ * and without locking.
+ *
+ * @author jepeders
+ */
+public class ConcurrentMetricRecorder {
+
+    private final Recorder recorder = new Recorder(1);
+
+    /**
+     * Stores an event in constant time.
+     *
+     * @param event The event to record.
+     * @param expectedInterval The expected interval to record or 0 to not correct for missed events.
+     */
+    public void record(long event, long expectedInterval) {
+        recorder.recordValueWithExpectedInterval(event, expectedInterval);
+    }
+
+    /**
+     * Stores the same event a number of times in constant time.
+     *
+     * @param event The event to record.
+     * @param count The number of times the event occurred.
+     */
+    public void recordWithCount(long event, long count) {
+        recorder.recordValueWithCount(event, count);
+    }
+
+    public Histogram getHistogram() {
+        return recorder.getIntervalHistogram();
+    }
+}
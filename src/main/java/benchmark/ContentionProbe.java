@@ -0,0 +1,291 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import model.TaskIteration;
+
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads the lock and monitor contention of the benchmark thread and the threads of the load generator from the
+ * {@link ThreadMXBean} after every iteration. The threads of the generator are the threads started while the workload
+ * was set up or while the task ran, except the threads of the harness itself.
+ * <p>
+ * For every iteration the number of times the threads blocked on a monitor or waited for a notification or a lock,
+ * and the time they spent doing so, are recorded in histograms. The JVM measures the times in milliseconds, so short
+ * waits only show up in the counts.
+ * </p>
+ * <p>
+ * The benchmark thread cannot be found waiting for a lock between two iterations, so while the iterations run a
+ * sampler thread reads the state of the tracked threads every millisecond. Every time a thread is found waiting for a
+ * lock held by another thread, the lock is counted, which gives a rough picture of the most contended locks.
+ * </p>
+ *
+ * @author jepeders
+ */
+class ContentionProbe {
+
+    public static final String BLOCKED_HISTOGRAM = "blocked";
+    public static final String BLOCKED_TIME_HISTOGRAM = "blockedtime";
+    public static final String WAITED_HISTOGRAM = "waited";
+    public static final String WAITED_TIME_HISTOGRAM = "waitedtime";
+    public static final String REPORT_NAME = "contention";
+
+    private static final int TOP_LOCKS = 10;
+    private static final long LOCK_SAMPLE_INTERVAL_IN_NANOS = 1000000;
+
+    private final ThreadMXBean bean;
+    private final Set<Long> seenThreads = new HashSet<Long>();
+
+    private final MetricRecorder blockedRecorder = new MetricRecorder();
+    private final MetricRecorder blockedTimeRecorder = new MetricRecorder();
+    private final MetricRecorder waitedRecorder = new MetricRecorder();
+    private final MetricRecorder waitedTimeRecorder = new MetricRecorder();
+    /* Only touched by the sampler thread until it has been joined */
+    private final Map<String, LockCount> locks = new HashMap<String, LockCount>();
+    private long lockSamples;
+
+    private LockSampler sampler;
+
+    /* The tracked threads and their counters as of the last sample, in the same order */
+    private volatile long[] threadIds;
+    private String[] threadNames;
+    private long[] blockedCounts;
+    private long[] blockedTimes;
+    private long[] waitedCounts;
+    private long[] waitedTimes;
+    private long[] firstCounts;
+
+    /**
+     * Creates a probe tracking the current thread. The threads alive at this point are not part of the generator.
+     *
+     * @param bean The bean to read the thread information from, with contention monitoring enabled.
+     */
+    ContentionProbe(ThreadMXBean bean) {
+        this.bean = bean;
+        for (long id : bean.getAllThreadIds()) {
+            seenThreads.add(id);
+        }
+        setThreads(new long[] { Thread.currentThread().getId() });
+    }
+
+    /**
+     * Tracks the threads started since the last call, so they are counted as threads of the generator.
+     */
+    void trackNewThreads() {
+        final long[] newThreads = findNewThreads();
+        if (newThreads.length > 0) {
+            final long[] ids = Arrays.copyOf(threadIds, threadIds.length + newThreads.length);
+            System.arraycopy(newThreads, 0, ids, threadIds.length, newThreads.length);
+            setThreads(ids);
+        }
+    }
+
+    /**
+     * Ignores the threads started since the last call, because they belong to the harness.
+     */
+    void ignoreNewThreads() {
+        findNewThreads();
+    }
+
+    /**
+     * Reads the counters of the tracked threads and records the difference since the previous sample. Threads that
+     * died keep the counters of their last sample.
+     */
+    void sample() {
+        final ThreadInfo[] infos = bean.getThreadInfo(threadIds);
+        long blocked = 0;
+        long blockedTime = 0;
+        long waited = 0;
+        long waitedTime = 0;
+        for (int i = 0; i < infos.length; i++) {
+            final ThreadInfo info = infos[i];
+            if (info == null) {
+                continue;
+            }
+            blocked += info.getBlockedCount() - blockedCounts[i];
+            blockedTime += Math.max(0, info.getBlockedTime() - blockedTimes[i]);
+            waited += info.getWaitedCount() - waitedCounts[i];
+            waitedTime += Math.max(0, info.getWaitedTime() - waitedTimes[i]);
+            blockedCounts[i] = info.getBlockedCount();
+            blockedTimes[i] = info.getBlockedTime();
+            waitedCounts[i] = info.getWaitedCount();
+            waitedTimes[i] = info.getWaitedTime();
+        }
+        blockedRecorder.record(blocked, 0);
+        blockedTimeRecorder.record(MILLISECONDS.toNanos(blockedTime), 0);
+        waitedRecorder.record(waited, 0);
+        waitedTimeRecorder.record(MILLISECONDS.toNanos(waitedTime), 0);
+    }
+
+    /**
+     * Starts sampling the locks the tracked threads wait for. The sampler thread is not tracked itself.
+     */
+    void startSampling() {
+        sampler = new LockSampler();
+        seenThreads.add(sampler.getId());
+        sampler.start();
+    }
+
+    /**
+     * Stops sampling the locks and waits for the sampler thread to finish.
+     */
+    void stopSampling() {
+        if (sampler == null) {
+            return;
+        }
+        sampler.running = false;
+        LockSupport.unpark(sampler);
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while stopping the lock sampler", e);
+        } finally {
+            sampler = null;
+        }
+    }
+
+    /**
+     * Adds the histograms and the contention report to the given iteration. The sampling must have been stopped.
+     */
+    void contribute(TaskIteration iteration) {
+        iteration.addHistogram(BLOCKED_HISTOGRAM, blockedRecorder.getHistogram());
+        iteration.addHistogram(BLOCKED_TIME_HISTOGRAM, blockedTimeRecorder.getHistogram());
+        iteration.addHistogram(WAITED_HISTOGRAM, waitedRecorder.getHistogram());
+        iteration.addHistogram(WAITED_TIME_HISTOGRAM, waitedTimeRecorder.getHistogram());
+        iteration.addReport(REPORT_NAME, describe(iteration.load));
+    }
+
+    private String describe(int load) {
+        final StringBuilder report = new StringBuilder();
+        report.append(String.format("Contention with %d load%n", load));
+        report.append(String.format("%-32s %12s %12s %12s %12s%n", "Thread", "Blocked", "Blocked ms", "Waited",
+                "Waited ms"));
+        for (int i = 0; i < threadIds.length; i++) {
+            report.append(String.format("%-32s %12d %12d %12d %12d%n", threadNames[i],
+                    blockedCounts[i] - firstCounts[4 * i], blockedTimes[i] - firstCounts[4 * i + 1],
+                    waitedCounts[i] - firstCounts[4 * i + 2], waitedTimes[i] - firstCounts[4 * i + 3]));
+        }
+
+        final List<LockCount> sorted = new ArrayList<LockCount>(locks.values());
+        Collections.sort(sorted, new Comparator<LockCount>() {
+            @Override
+            public int compare(LockCount first, LockCount second) {
+                return Long.compare(second.count, first.count);
+            }
+        });
+        report.append(String.format("%nMost contended locks (times a thread was found waiting for the lock in %d "
+                + "samples)%n", lockSamples));
+        if (sorted.isEmpty()) {
+            report.append(String.format("None%n"));
+        }
+        for (LockCount lock : sorted.subList(0, Math.min(TOP_LOCKS, sorted.size()))) {
+            report.append(String.format("%8d %s held by %s%n", lock.count, lock.name, lock.owners));
+        }
+        return report.toString();
+    }
+
+    private void countLock(ThreadInfo info) {
+        LockCount lock = locks.get(info.getLockName());
+        if (lock == null) {
+            lock = new LockCount(info.getLockName());
+            locks.put(lock.name, lock);
+        }
+        lock.count++;
+        lock.owners.add(info.getLockOwnerName());
+    }
+
+    private void sampleLocks() {
+        for (ThreadInfo info : bean.getThreadInfo(threadIds)) {
+            if (info != null && info.getLockName() != null && info.getLockOwnerId() != -1) {
+                countLock(info);
+            }
+        }
+        lockSamples++;
+    }
+
+    private long[] findNewThreads() {
+        final long[] ids = bean.getAllThreadIds();
+        int found = 0;
+        for (long id : ids) {
+            if (seenThreads.add(id)) {
+                ids[found++] = id;
+            }
+        }
+        return Arrays.copyOf(ids, found);
+    }
+
+    /**
+     * Starts tracking the given threads. The counters of threads tracked before are kept.
+     */
+    private void setThreads(long[] ids) {
+        final int known = threadIds == null ? 0 : threadIds.length;
+        final ThreadInfo[] infos = bean.getThreadInfo(ids);
+        threadNames = Arrays.copyOf(threadNames == null ? new String[0] : threadNames, ids.length);
+        blockedCounts = Arrays.copyOf(blockedCounts == null ? new long[0] : blockedCounts, ids.length);
+        blockedTimes = Arrays.copyOf(blockedTimes == null ? new long[0] : blockedTimes, ids.length);
+        waitedCounts = Arrays.copyOf(waitedCounts == null ? new long[0] : waitedCounts, ids.length);
+        waitedTimes = Arrays.copyOf(waitedTimes == null ? new long[0] : waitedTimes, ids.length);
+        firstCounts = Arrays.copyOf(firstCounts == null ? new long[0] : firstCounts, 4 * ids.length);
+        for (int i = known; i < ids.length; i++) {
+            final ThreadInfo info = infos[i];
+            threadNames[i] = info == null ? "Thread " + ids[i] : info.getThreadName();
+            if (info != null) {
+                blockedCounts[i] = firstCounts[4 * i] = info.getBlockedCount();
+                blockedTimes[i] = firstCounts[4 * i + 1] = info.getBlockedTime();
+                waitedCounts[i] = firstCounts[4 * i + 2] = info.getWaitedCount();
+                waitedTimes[i] = firstCounts[4 * i + 3] = info.getWaitedTime();
+            }
+        }
+        threadIds = ids;
+    }
+
+    /**
+     * Samples the locks of the tracked threads until it is stopped.
+     */
+    private final class LockSampler extends Thread {
+
+        private volatile boolean running = true;
+
+        LockSampler() {
+            super("lock-sampler");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                sampleLocks();
+                LockSupport.parkNanos(LOCK_SAMPLE_INTERVAL_IN_NANOS);
+            }
+        }
+    }
+
+    private static final class LockCount {
+
+        final String name;
+        final Set<String> owners = new HashSet<String>();
+        long count;
+
+        LockCount(String name) {
+            this.name = name;
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import model.Convergence;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Decides when a load has run long enough for the tracked deadline percentiles to converge. At the end of every window
+ * the confidence interval of each percentile is computed from the order statistics of the cumulative measured deadlines
+ * of the {@link LiveHistograms}, which hold one sample per iteration with three significant digits: with <code>n</code>
+ * samples the p-th percentile lies between the samples at the ranks <code>np &plusmn; z sqrt(np(1 - p))</code> with the
+ * given confidence, whatever the distribution of the samples. The load has converged when the half-width of every
+ * interval, relative to the percentile, is within the relative error for a number of consecutive windows and the
+ * minimum runtime has passed. An interval within a single bucket of the histogram is only known to the width of the
+ * bucket, which is then taken as its width.
+ *
+ * @author jepeders
+ */
+class ConvergenceMonitor {
+
+    private final Convergence convergence;
+    private final LiveHistograms histograms;
+    private final long startInNanos;
+    private final long windowInNanos;
+    private final long minRuntimeInNanos;
+    private final double z;
+    private long nextCheckInNanos;
+    private int stableWindows;
+    private boolean converged;
+
+    ConvergenceMonitor(Convergence convergence, LiveHistograms histograms, long startInNanos) {
+        this.convergence = convergence;
+        this.histograms = histograms;
+        this.startInNanos = startInNanos;
+        this.windowInNanos = MILLISECONDS.toNanos(convergence.windowInMs);
+        this.minRuntimeInNanos = MILLISECONDS.toNanos(convergence.minRuntimeInMs);
+        this.z = convergence.getZCriticalValue();
+        this.nextCheckInNanos = startInNanos + windowInNanos;
+    }
+
+    /**
+     * @param runtimeInNanos The runtime given on the command line.
+     * @return The time at which the load stops, even if the percentiles have not converged.
+     */
+    long getStopTimeInNanos(long runtimeInNanos) {
+        return startInNanos + (convergence.maxRuntimeInMs > 0 ? MILLISECONDS.toNanos(convergence.maxRuntimeInMs)
+                : runtimeInNanos);
+    }
+
+    /**
+     * Checks the percentiles if the window has passed.
+     *
+     * @param timeInNanos The current time.
+     * @return True if the percentiles have converged and the load can stop.
+     */
+    boolean hasConverged(long timeInNanos) {
+        if (timeInNanos < nextCheckInNanos) {
+            return false;
+        }
+        nextCheckInNanos = timeInNanos + windowInNanos;
+        histograms.update();
+        final Histogram deadline = histograms.getMeasuredDeadlineHistogram();
+        boolean withinError = true;
+        for (Double percentile : convergence.percentiles) {
+            withinError &= relativeError(deadline, percentile) <= convergence.relativeError;
+        }
+        stableWindows = withinError ? stableWindows + 1 : 0;
+        converged = stableWindows >= convergence.stableWindows && timeInNanos - startInNanos >= minRuntimeInNanos;
+        return converged;
+    }
+
+    /**
+     * Describes the achieved precision of the percentiles. Must be called after the histograms are finished.
+     */
+    String describe() {
+        final Histogram deadline = histograms.getMeasuredDeadlineHistogram();
+        final StringBuilder builder = new StringBuilder(String.format("%s after %.1fs with %d samples at %.0f%% "
+                        + "confidence:", converged ? "Converged" : "Did not converge", (System.nanoTime()
+                        - startInNanos) / 1e9, deadline.getTotalCount(), convergence.confidence * 100));
+        for (Double percentile : convergence.percentiles) {
+            final double error = relativeError(deadline, percentile);
+            builder.append(String.format(" p%s %dns %s", name(percentile), deadline.getValueAtPercentile(percentile),
+                    Double.isInfinite(error) ? "(too few samples)" : String.format("+/-%.1f%%", error * 100)));
+        }
+        return builder.toString();
+    }
+
+    private static String name(double percentile) {
+        return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
+
+    /**
+     * @return The half-width of the confidence interval of the percentile relative to the percentile or infinity if
+     * there are too few samples to bound the interval. When both bounds fall in the same bucket, the width of the
+     * bucket bounds the interval.
+     */
+    double relativeError(Histogram histogram, double percentile) {
+        final long n = histogram.getTotalCount();
+        final double p = percentile / 100;
+        final double margin = z * Math.sqrt(n * p * (1 - p));
+        final double lowerRank = Math.floor(n * p - margin);
+        final double upperRank = Math.ceil(n * p + margin) + 1;
+        final long value = histogram.getValueAtPercentile(percentile);
+        if (n == 0 || lowerRank < 1 || upperRank > n || value == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        final long lower = histogram.getValueAtPercentile(100 * lowerRank / n);
+        final long upper = histogram.getValueAtPercentile(100 * upperRank / n);
+        if (upper == lower) {
+            return histogram.sizeOfEquivalentValueRange(value) / (2d * value);
+        }
+        return (upper - lower) / (2d * value);
+    }
+
+}
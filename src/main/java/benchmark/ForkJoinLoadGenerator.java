@@ -0,0 +1,252 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A load generator that splits <code>load</code> units of CPU-bound work across the threads of a {@link ForkJoinPool}.
+ * The range of units is split in halves until a range is at most the split threshold, and the ranges are computed in
+ * parallel. With a parallelism of 1 the units are computed in the calling thread, which is the sequential baseline.
+ * <p>
+ * Parallel stragglers often make the tail latency worse even when the mean improves, so by default the benchmark
+ * runs every load with a parallelism of 1, 2, 4 and so on up to the maximum parallelism, and reports the speedup,
+ * efficiency and tail amplification compared to the sequential run. There is one pool per level of parallelism,
+ * which is kept across the loads. Every time the parallelism is set, all the workers of the pool are started before
+ * the next run, so the first iterations do not pay for starting threads.
+ * </p>
+ *
+ * @author jepeders
+ */
+public class ForkJoinLoadGenerator implements SinkLoadGenerator, GeneratorLifecycle, ParallelGenerator {
+
+    private static final long SEED = 1843710252; /* Random number */
+    private static final long WARMUP_TIMEOUT_IN_SECONDS = 10;
+
+    private final Parameters parameters;
+    private final int maxParallelism;
+    private final Map<Integer, ForkJoinPool> pools = new HashMap<Integer, ForkJoinPool>();
+    private int parallelism;
+    private ForkJoinPool pool;
+
+    public ForkJoinLoadGenerator() {
+        this(new Parameters());
+    }
+
+    /**
+     * Creates a generator with the given parameters.
+     *
+     * @param parameters The parameters of the generator.
+     * @throws IllegalArgumentException If the parameters are not valid.
+     */
+    public ForkJoinLoadGenerator(Parameters parameters) {
+        parameters.validate();
+        this.parameters = parameters;
+        this.maxParallelism = parameters.maxParallelism > 0 ? parameters.maxParallelism
+                : Runtime.getRuntime().availableProcessors();
+        this.parallelism = maxParallelism;
+    }
+
+    @Override
+    public void generateLoad(int load, Blackhole blackhole) {
+        if (pool == null) {
+            blackhole.consume(compute(0, load, parameters.workPerUnit));
+        } else {
+            blackhole.consume(pool.invoke(new Split(0, load, parameters.splitThreshold, parameters.workPerUnit))
+                    .longValue());
+        }
+    }
+
+    @Override
+    public int[] getParallelismLevels() {
+        if (!parameters.sweep) {
+            return new int[] {maxParallelism};
+        }
+        final List<Integer> levels = new ArrayList<Integer>();
+        for (int level = 1; level < maxParallelism; level *= 2) {
+            levels.add(level);
+        }
+        levels.add(maxParallelism);
+        final int[] result = new int[levels.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = levels.get(i);
+        }
+        return result;
+    }
+
+    @Override
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+        pool = null;
+        startPool();
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public void setup(int load) {
+        startPool();
+    }
+
+    @Override
+    public void teardown(int load) {
+        /* The pools are kept for the next load */
+    }
+
+    /**
+     * Selects the pool of the current parallelism, creating it if needed, and starts its workers.
+     */
+    private void startPool() {
+        if (pool != null || parallelism <= 1) {
+            return;
+        }
+        pool = pools.get(parallelism);
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+            pools.put(parallelism, pool);
+        }
+        warmUp(pool, parallelism);
+    }
+
+    /**
+     * Submits a task per worker, which waits until every task has been taken by a worker. The pool starts a new
+     * worker for every task no idle worker takes, so all the workers are running when the tasks return. Workers
+     * which timed out while another level was running are started again.
+     */
+    private static void warmUp(ForkJoinPool pool, int parallelism) {
+        final CountDownLatch running = new CountDownLatch(parallelism);
+        final List<Future<?>> tasks = new ArrayList<Future<?>>();
+        for (int i = 0; i < parallelism; i++) {
+            tasks.add(pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    running.countDown();
+                    try {
+                        running.await(WARMUP_TIMEOUT_IN_SECONDS, SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while starting the workers of the pool", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to start the workers of the pool", e);
+        }
+    }
+
+    /**
+     * Computes the units in the given range. Each unit runs a number of rounds of a xorshift random number generator.
+     */
+    static long compute(int from, int to, int workPerUnit) {
+        long sum = 0;
+        for (int unit = from; unit < to; unit++) {
+            long x = SEED + unit;
+            for (int i = 0; i < workPerUnit; i++) {
+                x ^= x << 13;
+                x ^= x >>> 7;
+                x ^= x << 17;
+            }
+            sum += x;
+        }
+        return sum;
+    }
+
+    private static final class Split extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final int workPerUnit;
+
+        Split(int from, int to, int threshold, int workPerUnit) {
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.workPerUnit = workPerUnit;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= threshold) {
+                return ForkJoinLoadGenerator.compute(from, to, workPerUnit);
+            }
+            final int middle = (from + to) >>> 1;
+            final Split left = new Split(from, middle, threshold, workPerUnit);
+            left.fork();
+            final long right = new Split(middle, to, threshold, workPerUnit).compute();
+            return right + left.join();
+        }
+    }
+
+    /**
+     * Provides the generator under the name <code>fork-join</code>. The parameters given in the task file are bound to
+     * {@link Parameters}.
+     */
+    public static class Provider implements LoadGeneratorProvider {
+
+        @Override
+        public String getName() {
+            return "fork-join";
+        }
+
+        @Override
+        public Workload create(GeneratorParameters parameters) {
+            return Workload.of(new ForkJoinLoadGenerator(parameters.isEmpty() ? new Parameters()
+                    : parameters.bind(Parameters.class)));
+        }
+    }
+
+    /**
+     * The parameters of the fork/join generator.
+     */
+    public static class Parameters {
+
+        /** The largest number of threads or 0 to use the number of available processors. */
+        public int maxParallelism = 0;
+        /** The largest number of units computed without splitting the range further. */
+        public int splitThreshold = 4;
+        /** The number of random number generator rounds per unit of load. */
+        public int workPerUnit = 1000;
+        /** True to run every load with each level of parallelism, false to only use the maximum parallelism. */
+        public boolean sweep = true;
+
+        void validate() {
+            if (maxParallelism < 0) {
+                throw new IllegalArgumentException("Maximum parallelism cannot be negative");
+            }
+            if (splitThreshold < 1) {
+                throw new IllegalArgumentException("Split threshold must be at least 1");
+            }
+            if (workPerUnit < 0) {
+                throw new IllegalArgumentException("Work per unit cannot be negative");
+            }
+        }
+    }
+
+}
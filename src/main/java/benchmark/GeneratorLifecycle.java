@@ -0,0 +1,29 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+/**
+ * A load generator that needs to prepare or release resources around the iterations with a given load. The methods are
+ * called outside the timed window, so the time spent in them is not part of the benchmark.
+ *
+ * @author jepeders
+ */
+public interface GeneratorLifecycle {
+
+    /**
+     * Called before the iterations with the given load are started.
+     *
+     * @param load The load the following iterations will be run with.
+     */
+    void setup(int load);
+
+    /**
+     * Called after the iterations with the given load have completed.
+     *
+     * @param load The load the previous iterations were run with.
+     */
+    void teardown(int load);
+
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The parameters given to a load generator in the task file. The values can be read one by one with a default value,
+ * or bound to the public fields of a parameter class.
+ *
+ * @author jepeders
+ */
+public class GeneratorParameters {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Map<String, Object> values;
+
+    public GeneratorParameters(Map<String, Object> values) {
+        this.values = values == null ? Collections.<String, Object>emptyMap()
+                : Collections.unmodifiableMap(new LinkedHashMap<String, Object>(values));
+    }
+
+    public static GeneratorParameters empty() {
+        return new GeneratorParameters(null);
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    public boolean contains(String name) {
+        return values.containsKey(name);
+    }
+
+    public Map<String, Object> asMap() {
+        return values;
+    }
+
+    public String getString(String name, String defaultValue) {
+        final Object value = values.get(name);
+        return value == null ? defaultValue : value.toString();
+    }
+
+    public int getInt(String name, int defaultValue) {
+        return (int) getLong(name, defaultValue);
+    }
+
+    public long getLong(String name, long defaultValue) {
+        final Object value = values.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Parameter %s is not an integer: %s", name, value));
+        }
+    }
+
+    public double getDouble(String name, double defaultValue) {
+        final Object value = values.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Parameter %s is not a number: %s", name, value));
+        }
+    }
+
+    public boolean getBoolean(String name, boolean defaultValue) {
+        final Object value = values.get(name);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.toString());
+    }
+
+    /**
+     * Binds the parameters to a new instance of the given class. Parameters which are not given keep the default
+     * value of the class.
+     *
+     * @param type The class to bind the parameters to.
+     * @param <T>  The type of the class.
+     * @return A new instance with the parameter values.
+     * @throws IllegalArgumentException If a parameter is unknown or of the wrong type.
+     */
+    public <T> T bind(Class<T> type) {
+        return MAPPER.convertValue(values, type);
+    }
+
+    @Override
+    public String toString() {
+        return values.toString();
+    }
+
+}
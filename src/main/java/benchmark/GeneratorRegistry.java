@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+
+/**
+ * Looks up load generators by name. The generators are created by the {@link LoadGeneratorProvider}s found by the
+ * {@link ServiceLoader} on the class path and in the jar files of an optional plugin directory, so new generators can
+ * be added at runtime without rebuilding the benchmark.
+ * <p>
+ * If no provider has the requested name, the name is treated as a fully qualified class name. The class is then
+ * created with a constructor taking {@link GeneratorParameters}, a constructor taking a {@link Map} of parameters or a
+ * no-arg constructor, in that order.
+ * </p>
+ *
+ * @author jepeders
+ */
+public class GeneratorRegistry {
+
+    private final ClassLoader classLoader;
+    private final Map<String, LoadGeneratorProvider> providers = new TreeMap<String, LoadGeneratorProvider>();
+
+    private GeneratorRegistry(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        for (LoadGeneratorProvider provider : ServiceLoader.load(LoadGeneratorProvider.class, classLoader)) {
+            providers.put(provider.getName(), provider);
+        }
+    }
+
+    /**
+     * Creates a registry with the providers on the class path and in the jar files of the given directory.
+     *
+     * @param pluginDirectory A directory with plugin jars or null to only use the class path.
+     * @return A registry with the discovered providers.
+     * @throws IllegalArgumentException If the plugin directory is not a directory.
+     */
+    public static GeneratorRegistry load(File pluginDirectory) {
+        final ClassLoader parent = GeneratorRegistry.class.getClassLoader();
+        if (pluginDirectory == null) {
+            return new GeneratorRegistry(parent);
+        }
+        if (!pluginDirectory.isDirectory()) {
+            throw new IllegalArgumentException("Plugin directory " + pluginDirectory + " is not a directory");
+        }
+
+        final File[] jars = pluginDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(".jar");
+            }
+        });
+        final URL[] urls = new URL[jars == null ? 0 : jars.length];
+        try {
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = jars[i].toURI().toURL();
+            }
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return new GeneratorRegistry(new URLClassLoader(urls, parent));
+    }
+
+    /**
+     * @return The names of the generators provided through the {@link ServiceLoader}.
+     */
+    public Iterable<String> getNames() {
+        return providers.keySet();
+    }
+
+    /**
+     * Creates a workload for the generator with the given name.
+     *
+     * @param name       The name of a provider or the fully qualified name of a generator class.
+     * @param parameters The parameters to give the generator.
+     * @return A workload running the generator.
+     * @throws IllegalArgumentException If no generator could be created with the given name and parameters.
+     */
+    public Workload create(String name, GeneratorParameters parameters) {
+        final LoadGeneratorProvider provider = providers.get(name);
+        if (provider != null) {
+            return provider.create(parameters);
+        }
+
+        final Class<?> type;
+        try {
+            type = Class.forName(name, true, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException(String.format("Unknown generator %s. Available generators: %s", name,
+                    providers.keySet()));
+        }
+        return Workload.ofObject(instantiate(type, parameters));
+    }
+
+    private static Object instantiate(Class<?> type, GeneratorParameters parameters) {
+        try {
+            try {
+                return type.getConstructor(GeneratorParameters.class).newInstance(parameters);
+            } catch (NoSuchMethodException e) {
+                /* Try the next constructor */
+            }
+            try {
+                return type.getConstructor(Map.class).newInstance(parameters.asMap());
+            } catch (NoSuchMethodException e) {
+                /* Try the next constructor */
+            }
+            if (!parameters.isEmpty()) {
+                throw new IllegalArgumentException(String.format("Class %s does not accept parameters %s",
+                        type.getName(), parameters));
+            }
+            return type.getConstructor().newInstance();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(String.format("Class %s has no public constructor without arguments",
+                    type.getName()));
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Failed to create generator " + type.getName(), e.getCause());
+        } catch (InstantiationException e) {
+            throw new IllegalArgumentException("Failed to create generator " + type.getName(), e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Failed to create generator " + type.getName(), e);
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock-free queue for handing objects from one producer thread to one consumer thread. Neither side ever
+ * blocks or takes a lock; a full queue is reported to the producer, which decides how to wait.
+ *
+ * @param <T> The type of the objects to hand off.
+ * @author jepeders
+ */
+class HandoffQueue<T> {
+
+    private final AtomicReferenceArray<T> ring;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    HandoffQueue(int capacity) {
+        this.ring = new AtomicReferenceArray<T>(capacity);
+    }
+
+    /**
+     * Adds an object to the queue. Must only be called by the producer thread.
+     *
+     * @return True if the object was added, false if the queue was full.
+     */
+    boolean offer(T item) {
+        final long position = tail.get();
+        if (position - head.get() == ring.length()) {
+            return false;
+        }
+        ring.lazySet((int) (position % ring.length()), item);
+        /* Publishes the item to the consumer */
+        tail.lazySet(position + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest object from the queue. Must only be called by the consumer thread.
+     *
+     * @return The oldest object or null if the queue was empty.
+     */
+    T poll() {
+        final long position = head.get();
+        if (position == tail.get()) {
+            return null;
+        }
+        final int index = (int) (position % ring.length());
+        final T item = ring.get(index);
+        ring.lazySet(index, null);
+        head.lazySet(position + 1);
+        return item;
+    }
+
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A load generator that models the lifetime of heap objects. For every unit of load a configurable number of objects
+ * are allocated with a size drawn from a distribution. A fraction of these objects survive and are kept alive for a
+ * number of calls to {@link #generateLoad(int, Blackhole)} before they are released again, bounded by a maximum live
+ * set.
+ * <p>
+ * The surviving objects are kept in a table of slots indexed by primitive arrays. Expiring objects are found through a
+ * timing wheel and free slots through a free list, so every allocation, promotion and release is done in constant
+ * time O(1). The time spent by this generator therefore scales linearly with the load and is dominated by the
+ * allocations and not by the book-keeping.
+ * </p>
+ * <p>
+ * The parameters are read from the <code>heap-lifetime.yml</code> file on the classpath, or from the file given in the
+ * <code>benchmark.heapLifetime</code> system property.
+ * </p>
+ *
+ * @author jepeders
+ */
+public class HeapLifetimeLoadGenerator implements SinkLoadGenerator {
+
+    public static final String PARAMETERS_FILE = "heap-lifetime.yml";
+    public static final String PARAMETERS_PROPERTY = "benchmark.heapLifetime";
+
+    private static final long SEED = 1843710252; /* Random number */
+    private static final int NO_SLOT = -1;
+
+    private final Parameters parameters;
+    private final Random random = new Random(SEED);
+
+    /* The table of surviving objects */
+    private final Object[] slots;
+    private final int[] next;
+    private final int[] previous;
+    private final int[] bucketOfSlot;
+
+    /* Heads of the timing wheel buckets and the free list */
+    private final int[] wheel;
+    private int freeHead;
+
+    private long tick;
+    private int liveObjects;
+
+    /**
+     * Creates a generator with the parameters from the default parameter file.
+     */
+    public HeapLifetimeLoadGenerator() {
+        this(Parameters.load());
+    }
+
+    /**
+     * Creates a generator with the given parameters.
+     *
+     * @param parameters The parameters describing the allocation behaviour.
+     * @throws IllegalArgumentException If the parameters are not valid.
+     */
+    public HeapLifetimeLoadGenerator(Parameters parameters) {
+        parameters.validate();
+        this.parameters = parameters;
+
+        slots = new Object[parameters.liveSetSize];
+        next = new int[parameters.liveSetSize];
+        previous = new int[parameters.liveSetSize];
+        bucketOfSlot = new int[parameters.liveSetSize];
+        wheel = new int[parameters.maxLifetime + 1];
+        Arrays.fill(wheel, NO_SLOT);
+
+        /* Chain all slots in the free list */
+        for (int i = 0; i < next.length; i++) {
+            next[i] = i + 1 < next.length ? i + 1 : NO_SLOT;
+        }
+        freeHead = next.length > 0 ? 0 : NO_SLOT;
+    }
+
+    /**
+     * Allocates <code>load * allocationsPerLoad</code> objects and promotes a fraction of them to the live set.
+     *
+     * @param load      The amount of load to generate.
+     * @param blackhole The sink consuming the allocated objects.
+     */
+    @Override
+    public void generateLoad(int load, Blackhole blackhole) {
+        expire(++tick);
+
+        final long allocations = (long) load * parameters.allocationsPerLoad;
+        for (long i = 0; i < allocations; i++) {
+            final byte[] object = new byte[nextObjectSize()];
+            object[object.length - 1] = (byte) i;
+            blackhole.consume(object);
+
+            if (random.nextDouble() < parameters.survivalFraction) {
+                promote(object);
+            }
+        }
+    }
+
+    /**
+     * @return The number of objects currently kept alive by this generator.
+     */
+    public int getLiveObjects() {
+        return liveObjects;
+    }
+
+    private void promote(Object object) {
+        if (slots.length == 0) {
+            return;
+        }
+        if (freeHead == NO_SLOT) {
+            /* The live set is full, so a random object dies prematurely */
+            release(random.nextInt(slots.length));
+        }
+
+        final int slot = freeHead;
+        freeHead = next[slot];
+
+        final int lifetime = parameters.minLifetime
+                + random.nextInt(parameters.maxLifetime - parameters.minLifetime + 1);
+        final int bucket = (int) ((tick + lifetime) % wheel.length);
+
+        slots[slot] = object;
+        bucketOfSlot[slot] = bucket;
+        previous[slot] = NO_SLOT;
+        next[slot] = wheel[bucket];
+        if (wheel[bucket] != NO_SLOT) {
+            previous[wheel[bucket]] = slot;
+        }
+        wheel[bucket] = slot;
+        liveObjects++;
+    }
+
+    private void expire(long currentTick) {
+        final int bucket = (int) (currentTick % wheel.length);
+        while (wheel[bucket] != NO_SLOT) {
+            release(wheel[bucket]);
+        }
+    }
+
+    private void release(int slot) {
+        /* Unlink the slot from its wheel bucket */
+        if (previous[slot] != NO_SLOT) {
+            next[previous[slot]] = next[slot];
+        } else {
+            wheel[bucketOfSlot[slot]] = next[slot];
+        }
+        if (next[slot] != NO_SLOT) {
+            previous[next[slot]] = previous[slot];
+        }
+
+        /* Return it to the free list */
+        slots[slot] = null;
+        next[slot] = freeHead;
+        freeHead = slot;
+        liveObjects--;
+    }
+
+    private int nextObjectSize() {
+        final int min = parameters.minObjectSize;
+        final int max = parameters.maxObjectSize;
+        if (Parameters.FIXED.equals(parameters.sizeDistribution)) {
+            return min;
+        } else if (Parameters.EXPONENTIAL.equals(parameters.sizeDistribution)) {
+            final double size = min - Math.log(1 - random.nextDouble()) * (parameters.meanObjectSize - min);
+            return (int) Math.min(size, max);
+        } else {
+            return min + random.nextInt(max - min + 1);
+        }
+    }
+
+    /**
+     * Provides the generator under the name <code>heap-lifetime</code>. The parameters given in the task file are bound
+     * to {@link Parameters}. Without parameters the <code>heap-lifetime.yml</code> file is used.
+     */
+    public static class Provider implements LoadGeneratorProvider {
+
+        @Override
+        public String getName() {
+            return "heap-lifetime";
+        }
+
+        @Override
+        public Workload create(GeneratorParameters parameters) {
+            return Workload.of(new HeapLifetimeLoadGenerator(parameters.isEmpty() ? Parameters.load()
+                    : parameters.bind(Parameters.class)));
+        }
+    }
+
+    /**
+     * The parameters of the heap lifetime model. Sizes are in bytes and lifetimes are measured in calls to
+     * {@link HeapLifetimeLoadGenerator#generateLoad(int, Blackhole)}.
+     */
+    public static class Parameters {
+
+        public static final String FIXED = "fixed";
+        public static final String UNIFORM = "uniform";
+        public static final String EXPONENTIAL = "exponential";
+
+        /** The number of objects to allocate per unit of load. */
+        public int allocationsPerLoad = 1;
+        /** The distribution of the object sizes: fixed, uniform or exponential. */
+        public String sizeDistribution = UNIFORM;
+        public int minObjectSize = 16;
+        public int maxObjectSize = 4096;
+        /** The mean of the exponential size distribution. */
+        public int meanObjectSize = 256;
+        /** The fraction of allocated objects that survive the call in which they are allocated. */
+        public double survivalFraction = 0.25;
+        public int minLifetime = 1;
+        public int maxLifetime = 16;
+        /** The maximum number of surviving objects. */
+        public int liveSetSize = 65536;
+
+        void validate() {
+            if (allocationsPerLoad < 0) {
+                throw new IllegalArgumentException("Allocations per load cannot be negative");
+            }
+            if (!FIXED.equals(sizeDistribution) && !UNIFORM.equals(sizeDistribution)
+                    && !EXPONENTIAL.equals(sizeDistribution)) {
+                throw new IllegalArgumentException("Unknown size distribution " + sizeDistribution);
+            }
+            /* The uniform sizes and the lifetimes draw from max - min + 1 values, which must fit in an int */
+            if (minObjectSize < 1 || maxObjectSize < minObjectSize || maxObjectSize == Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Object sizes must satisfy 1 <= min <= max < " + Integer.MAX_VALUE);
+            }
+            if (meanObjectSize < minObjectSize) {
+                throw new IllegalArgumentException("Mean object size cannot be less than the minimum object size");
+            }
+            if (survivalFraction < 0 || survivalFraction > 1) {
+                throw new IllegalArgumentException("Survival fraction must be between 0 and 1");
+            }
+            if (minLifetime < 1 || maxLifetime < minLifetime || maxLifetime == Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Lifetimes must satisfy 1 <= min <= max < " + Integer.MAX_VALUE);
+            }
+            if (liveSetSize < 0) {
+                throw new IllegalArgumentException("Live set size cannot be negative");
+            }
+        }
+
+        /**
+         * Loads the parameters from the file given in the <code>benchmark.heapLifetime</code> system property or the
+         * default <code>heap-lifetime.yml</code> file.
+         *
+         * @return The parsed parameters.
+         */
+        public static Parameters load() {
+            final String file = System.getProperty(PARAMETERS_PROPERTY);
+            try {
+                final InputStream input = file == null
+                        ? HeapLifetimeLoadGenerator.class.getResourceAsStream("/" + PARAMETERS_FILE)
+                        : new FileInputStream(file);
+                if (input == null) {
+                    return new Parameters();
+                }
+                try {
+                    return new ObjectMapper(new YAMLFactory()).readValue(input, Parameters.class);
+                } finally {
+                    input.close();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+}
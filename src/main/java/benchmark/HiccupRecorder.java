@@ -56,18 +56,32 @@ import org.HdrHistogram.Histogram;
  */
 public class HiccupRecorder extends Thread {
 
-    private static final long RESOLUTION_IN_MS = 1;
+    static final long RESOLUTION_IN_MS = 1;
+    static final long RESOLUTION_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(RESOLUTION_IN_MS);
 
     public volatile boolean doRun;
     private final boolean allocateObjects;
+    private final long overheadInNanos;
     public volatile SleepTimeObject lastSleepTimeObj; // public volatile to make sure
                                                       // allocs are not optimized away...
     protected final MetricRecorder recorder;
 
     public HiccupRecorder(final boolean allocateObjects) {
+        this(allocateObjects, 0);
+    }
+
+    /**
+     * Creates a recorder which subtracts a constant overhead from every measured hiccup, such as the time a sleep
+     * usually overshoots on this host.
+     *
+     * @param allocateObjects Whether to allocate an object after each sleep.
+     * @param overheadInNanos The overhead to subtract from each hiccup.
+     */
+    public HiccupRecorder(final boolean allocateObjects, final long overheadInNanos) {
         this.setDaemon(true);
         this.setName("HiccupRecorder");
         this.allocateObjects = allocateObjects;
+        this.overheadInNanos = overheadInNanos;
         doRun = true;
 
         this.recorder = new MetricRecorder();
@@ -80,7 +94,7 @@ public class HiccupRecorder extends Thread {
 
     @Override
     public void run() {
-        final long resolutionNsec = TimeUnit.MILLISECONDS.toNanos(RESOLUTION_IN_MS);
+        final long resolutionNsec = RESOLUTION_IN_NANOS;
         try {
             while (doRun) {
                 final long timeBeforeMeasurement = System.nanoTime();
@@ -92,7 +106,7 @@ public class HiccupRecorder extends Thread {
                     lastSleepTimeObj = new SleepTimeObject();
                 }
 
-                long hiccupTimeNsec = System.nanoTime() - timeBeforeMeasurement;
+                long hiccupTimeNsec = Math.max(0, System.nanoTime() - timeBeforeMeasurement - overheadInNanos);
                 recorder.record(hiccupTimeNsec, resolutionNsec);
             }
         } catch (InterruptedException e) {
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import model.Interference;
+import model.Interference.CoRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the co-runners of an {@link Interference} at one level while the task runs. The co-runner threads are started
+ * before and stopped after every run, so they do not interfere with the writing of the results. The buffers of the
+ * co-runners are allocated before the threads start, and a run only starts once every co-runner is working.
+ *
+ * @author jepeders
+ */
+public class InterferenceVariant implements Variant {
+
+    /* The co-runners work in slices of this length, and pause between them when the intensity is below 1 */
+    private static final long SLICE_IN_NANOS = 100000;
+    private static final int CACHE_LINE = 64;
+
+    private final Interference interference;
+    private final double level;
+    private final List<CoRunnerThread> threads = new ArrayList<CoRunnerThread>();
+
+    public InterferenceVariant(Interference interference, double level) {
+        this.interference = interference;
+        this.level = level;
+    }
+
+    /**
+     * @return One variant for each level of the interference.
+     */
+    public static List<Variant> of(Interference interference) {
+        final List<Variant> variants = new ArrayList<Variant>();
+        for (double level : interference.levels) {
+            variants.add(new InterferenceVariant(interference, level));
+        }
+        return variants;
+    }
+
+    @Override
+    public String getName() {
+        return String.format(Locale.ROOT, "interference_%.2f", level);
+    }
+
+    @Override
+    public double getLevel() {
+        return level;
+    }
+
+    @Override
+    public void begin(int load) {
+        for (CoRunner coRunner : interference.coRunners) {
+            final double intensity = Math.min(1, coRunner.intensity * level);
+            if (intensity <= 0) {
+                continue;
+            }
+            for (int i = 0; i < coRunner.threads; i++) {
+                threads.add(new CoRunnerThread(coRunner, intensity, threads.size()));
+            }
+        }
+        final CountDownLatch working = new CountDownLatch(threads.size());
+        for (CoRunnerThread thread : threads) {
+            thread.working = working;
+            thread.start();
+        }
+        try {
+            working.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            end(load);
+            throw new IllegalStateException("Interrupted while starting the co-runners", e);
+        }
+    }
+
+    @Override
+    public void end(int load) {
+        for (CoRunnerThread thread : threads) {
+            thread.running = false;
+            LockSupport.unpark(thread);
+        }
+        try {
+            for (CoRunnerThread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            threads.clear();
+        }
+    }
+
+    private static final class CoRunnerThread extends Thread {
+
+        private final CoRunner coRunner;
+        private final double intensity;
+        private final Blackhole blackhole = new Blackhole();
+        private volatile boolean running = true;
+        private CountDownLatch working;
+
+        /* The state of the work, kept between slices */
+        private final long[] buffer;
+        private int position;
+        private long seed;
+
+        CoRunnerThread(CoRunner coRunner, double intensity, int index) {
+            super("co-runner-" + coRunner.type + "-" + index);
+            setDaemon(true);
+            this.coRunner = coRunner;
+            this.intensity = intensity;
+            this.seed = 1843710252L + index; /* Random number */
+            this.buffer = CoRunner.BANDWIDTH.equals(coRunner.type) || CoRunner.CACHE.equals(coRunner.type)
+                    ? new long[coRunner.sizeInBytes / 8] : null;
+        }
+
+        @Override
+        public void run() {
+            working.countDown();
+            final long periodInNanos = MILLISECONDS.toNanos(coRunner.periodInMs);
+            final long activeInNanos = (long) (coRunner.dutyCycle * periodInNanos);
+            final long pauseInNanos = (long) (SLICE_IN_NANOS * (1 - intensity) / intensity);
+
+            while (running) {
+                final long periodStartInNanos = System.nanoTime();
+                final long activeEndInNanos = periodStartInNanos + activeInNanos;
+                while (running && System.nanoTime() < activeEndInNanos) {
+                    work(System.nanoTime() + SLICE_IN_NANOS);
+                    if (pauseInNanos > 0) {
+                        LockSupport.parkNanos(pauseInNanos);
+                    }
+                }
+                final long idleInNanos = periodStartInNanos + periodInNanos - System.nanoTime();
+                if (running && idleInNanos > 0) {
+                    LockSupport.parkNanos(idleInNanos);
+                }
+            }
+        }
+
+        private void work(long endInNanos) {
+            final String type = coRunner.type;
+            do {
+                if (CoRunner.BANDWIDTH.equals(type)) {
+                    stream();
+                } else if (CoRunner.CACHE.equals(type)) {
+                    thrash();
+                } else if (CoRunner.ALLOCATION.equals(type)) {
+                    allocate();
+                } else {
+                    spin();
+                }
+            } while (System.nanoTime() < endInNanos);
+        }
+
+        private void spin() {
+            long x = seed;
+            for (int i = 0; i < 1024; i++) {
+                x ^= x << 13;
+                x ^= x >>> 7;
+                x ^= x << 17;
+            }
+            seed = x;
+            blackhole.consume(x);
+        }
+
+        /**
+         * Touches one long per cache line of the next part of the buffer, sequentially.
+         */
+        private void stream() {
+            final int step = CACHE_LINE / 8;
+            for (int i = 0; i < 1024; i++) {
+                buffer[position] += 1;
+                position += step;
+                if (position >= buffer.length) {
+                    position = 0;
+                }
+            }
+        }
+
+        /**
+         * Touches random cache lines of the buffer.
+         */
+        private void thrash() {
+            long x = seed;
+            for (int i = 0; i < 1024; i++) {
+                x ^= x << 13;
+                x ^= x >>> 7;
+                x ^= x << 17;
+                buffer[(int) ((x >>> 1) % buffer.length)] += 1;
+            }
+            seed = x;
+        }
+
+        /**
+         * Allocates objects of random sizes up to the co-runner size, which die young.
+         */
+        private void allocate() {
+            final int maxSize = Math.min(coRunner.sizeInBytes, 1 << 16);
+            long x = seed;
+            for (int i = 0; i < 64; i++) {
+                x ^= x << 13;
+                x ^= x >>> 7;
+                x ^= x << 17;
+                blackhole.consume(new byte[(int) ((x >>> 1) % maxSize) + 1]);
+            }
+            seed = x;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "interference at level %.2f", level);
+    }
+
+}
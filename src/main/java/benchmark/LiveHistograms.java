@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Cumulative histograms of the values recorded so far in a load, for checking the results while the load runs. Every
+ * update adds the values recorded since the last update to the cumulative histograms, so the recorders keep recording
+ * without interruption.
+ * <p>
+ * The deadline recorder adds synthetic samples for the iterations a long iteration held back, which suits the
+ * percentiles but not the counting of misses. The measured deadlines are therefore also recorded without correction
+ * and with three significant digits, so a miss is counted once and close to the deadline it missed.
+ * </p>
+ *
+ * @author jepeders
+ */
+class LiveHistograms {
+
+    private final MetricRecorder deadlineRecorder;
+    private final MetricRecorder periodRecorder;
+    private final MetricRecorder hiccupRecorder;
+    private final MetricRecorder measuredDeadlineRecorder = new MetricRecorder(3);
+    private final Histogram deadline = new Histogram(1);
+    private final Histogram period = new Histogram(1);
+    private final Histogram response = new Histogram(1);
+    private final Histogram measuredDeadline = new Histogram(3);
+
+    LiveHistograms(MetricRecorder deadlineRecorder, MetricRecorder periodRecorder, HiccupRecorder hiccupRecorder) {
+        this.deadlineRecorder = deadlineRecorder;
+        this.periodRecorder = periodRecorder;
+        this.hiccupRecorder = hiccupRecorder.recorder;
+    }
+
+    /**
+     * Records the measured deadline of an iteration without correction. Called by the benchmark thread next to the
+     * recording of the deadline.
+     */
+    void recordDeadline(long deadlineInNanos) {
+        measuredDeadlineRecorder.record(deadlineInNanos, 0);
+    }
+
+    /**
+     * Adds the values recorded since the last update.
+     */
+    void update() {
+        deadline.add(deadlineRecorder.getHistogram());
+        measuredDeadline.add(measuredDeadlineRecorder.getHistogram());
+        period.add(periodRecorder.getHistogram());
+        response.add(hiccupRecorder.getHistogram());
+    }
+
+    /**
+     * Adds the values recorded since the last update, once the recording has stopped.
+     *
+     * @param hiccupRest The histogram returned when the {@link HiccupRecorder} was terminated.
+     */
+    void finish(Histogram hiccupRest) {
+        deadline.add(deadlineRecorder.getHistogram());
+        measuredDeadline.add(measuredDeadlineRecorder.getHistogram());
+        period.add(periodRecorder.getHistogram());
+        response.add(hiccupRest);
+    }
+
+    Histogram getDeadlineHistogram() {
+        return deadline;
+    }
+
+    /**
+     * @return The measured deadlines, one sample per iteration.
+     */
+    Histogram getMeasuredDeadlineHistogram() {
+        return measuredDeadline;
+    }
+
+    Histogram getPeriodHistogram() {
+        return period;
+    }
+
+    Histogram getResponseHistogram() {
+        return response;
+    }
+
+}
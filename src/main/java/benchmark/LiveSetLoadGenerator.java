@@ -0,0 +1,306 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A load generator that keeps the heap occupied by a persistent object graph of a given size. When created the
+ * generator builds a graph of nodes until the heap occupancy, as reported by the {@link MemoryPoolMXBean}s, reaches a
+ * target fraction of the maximum heap or a target number of bytes. Each node references a number of other random
+ * nodes and carries a payload of a random size.
+ * <p>
+ * Every call to {@link #generateLoad(int, Blackhole)} churns the graph: references between the nodes are rewired and
+ * the payloads of some nodes are replaced by payloads of a different size, which leaves holes in the old generation.
+ * The sizes of the new payloads are chosen so the occupancy stays around the target.
+ * </p>
+ * <p>
+ * The parameters are read from the <code>live-set.yml</code> file on the classpath, or from the file given in the
+ * <code>benchmark.liveSet</code> system property.
+ * </p>
+ *
+ * @author jepeders
+ */
+public class LiveSetLoadGenerator implements SinkLoadGenerator {
+
+    public static final String PARAMETERS_FILE = "live-set.yml";
+    public static final String PARAMETERS_PROPERTY = "benchmark.liveSet";
+
+    private static final long SEED = 1843710252; /* Random number */
+    private static final int MAX_BUILD_ROUNDS = 8;
+    /* Approximate size of an object header and an array header in bytes */
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int REFERENCE_SIZE = 8;
+
+    private final Parameters parameters;
+    private final Random random = new Random(SEED);
+    private final long targetBytes;
+
+    private Node[] nodes = new Node[0];
+    private int nodeCount;
+    private long estimatedBytes;
+    /* The estimate of the graph when the live set reached the target, which the churn keeps the graph around */
+    private long steadyEstimatedBytes;
+    private long measuredBytes;
+
+    /**
+     * Creates a generator with the parameters from the default parameter file and builds the live set.
+     */
+    public LiveSetLoadGenerator() {
+        this(Parameters.load());
+    }
+
+    /**
+     * Creates a generator with the given parameters and builds the live set.
+     *
+     * @param parameters The parameters describing the live set.
+     * @throws IllegalArgumentException If the parameters are not valid.
+     */
+    public LiveSetLoadGenerator(Parameters parameters) {
+        parameters.validate();
+        this.parameters = parameters;
+        this.targetBytes = parameters.targetBytes > 0 ? parameters.targetBytes
+                : (long) (parameters.targetHeapFraction * Runtime.getRuntime().maxMemory());
+        build();
+    }
+
+    /**
+     * Churns <code>load * churnPerLoad</code> references in the graph and replaces the payloads of a fraction of the
+     * nodes given by the fragmentation.
+     *
+     * @param load      The amount of load to generate.
+     * @param blackhole Not used; the churn is stored in the graph, which is kept alive by this generator.
+     */
+    @Override
+    public void generateLoad(int load, Blackhole blackhole) {
+        if (nodeCount == 0) {
+            return;
+        }
+        final long operations = (long) load * parameters.churnPerLoad;
+        for (long i = 0; i < operations; i++) {
+            final Node node = nodes[random.nextInt(nodeCount)];
+            if (node.references.length > 0) {
+                node.references[random.nextInt(node.references.length)] = nodes[random.nextInt(nodeCount)];
+            }
+            if (random.nextDouble() < parameters.fragmentation) {
+                replacePayload(nodes[random.nextInt(nodeCount)]);
+            }
+        }
+    }
+
+    /**
+     * @return The number of bytes the live set is aiming for.
+     */
+    public long getTargetBytes() {
+        return targetBytes;
+    }
+
+    /**
+     * @return The heap occupancy measured after the live set was built, in bytes.
+     */
+    public long getMeasuredBytes() {
+        return measuredBytes;
+    }
+
+    /**
+     * @return The number of nodes in the graph.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Grows or shrinks the graph until the measured heap occupancy is within the tolerance of the target.
+     */
+    private void build() {
+        final long baseline = measureHeapOccupancy();
+        measuredBytes = baseline;
+        double bytesPerEstimatedByte = 1;
+        for (int round = 0; round < MAX_BUILD_ROUNDS; round++) {
+            if (Math.abs(measuredBytes - targetBytes) <= parameters.tolerance * targetBytes) {
+                break;
+            }
+            final long missingBytes = (long) ((targetBytes - measuredBytes) / bytesPerEstimatedByte);
+            resize((int) Math.max(0, nodeCount + missingBytes / averageNodeSize()));
+
+            measuredBytes = measureHeapOccupancy();
+            if (estimatedBytes > 0 && measuredBytes > baseline) {
+                bytesPerEstimatedByte = (double) (measuredBytes - baseline) / estimatedBytes;
+            }
+        }
+        steadyEstimatedBytes = estimatedBytes;
+    }
+
+    private void resize(int newCount) {
+        if (newCount > nodes.length) {
+            nodes = Arrays.copyOf(nodes, newCount);
+        }
+        for (int i = nodeCount; i < newCount; i++) {
+            final Node node = new Node(parameters.pointersPerNode, nextPayloadSize(parameters.minNodeSize,
+                    parameters.maxNodeSize));
+            estimatedBytes += sizeOf(node);
+            nodes[i] = node;
+        }
+        for (int i = newCount; i < nodeCount; i++) {
+            estimatedBytes -= sizeOf(nodes[i]);
+            nodes[i] = null;
+        }
+        nodeCount = newCount;
+
+        /* Wire the graph */
+        for (int i = 0; i < nodeCount && nodeCount > 0; i++) {
+            final Node[] references = nodes[i].references;
+            for (int j = 0; j < references.length; j++) {
+                references[j] = nodes[random.nextInt(nodeCount)];
+            }
+        }
+    }
+
+    private void replacePayload(Node node) {
+        final int oldSize = node.payload.length;
+        /* Shrink the payloads when the graph is above the size the build reached and grow them when below */
+        final int size = estimatedBytes > steadyEstimatedBytes
+                ? nextPayloadSize(parameters.minNodeSize, oldSize)
+                : nextPayloadSize(oldSize, parameters.maxNodeSize);
+        node.payload = new byte[size];
+        estimatedBytes += size - oldSize;
+    }
+
+    private int nextPayloadSize(int min, int max) {
+        return min + random.nextInt(max - min + 1);
+    }
+
+    private int averageNodeSize() {
+        return 3 * OBJECT_OVERHEAD + parameters.pointersPerNode * REFERENCE_SIZE
+                + (parameters.minNodeSize + parameters.maxNodeSize) / 2;
+    }
+
+    private static long sizeOf(Node node) {
+        return 3 * OBJECT_OVERHEAD + node.references.length * REFERENCE_SIZE + node.payload.length;
+    }
+
+    /**
+     * Measures the used heap in bytes right after a full collection, by summing the usage of all heap memory pools.
+     */
+    private static long measureHeapOccupancy() {
+        System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static final class Node {
+        final Node[] references;
+        byte[] payload;
+
+        Node(int pointers, int payloadSize) {
+            this.references = new Node[pointers];
+            this.payload = new byte[payloadSize];
+        }
+    }
+
+    /**
+     * Provides the generator under the name <code>live-set</code>. The parameters given in the task file are bound
+     * to {@link Parameters}. Without parameters the <code>live-set.yml</code> file is used.
+     */
+    public static class Provider implements LoadGeneratorProvider {
+
+        @Override
+        public String getName() {
+            return "live-set";
+        }
+
+        @Override
+        public Workload create(GeneratorParameters parameters) {
+            return Workload.of(new LiveSetLoadGenerator(parameters.isEmpty() ? Parameters.load()
+                    : parameters.bind(Parameters.class)));
+        }
+    }
+
+    /**
+     * The parameters of the live set. Sizes are in bytes.
+     */
+    public static class Parameters {
+
+        /** The fraction of the maximum heap to fill, used when no target bytes are given. */
+        public double targetHeapFraction = 0.3;
+        /** The size of the live set in bytes. Overrides the heap fraction when positive. */
+        public long targetBytes = 0;
+        /** The number of references from each node to other nodes. */
+        public int pointersPerNode = 4;
+        public int minNodeSize = 64;
+        public int maxNodeSize = 1024;
+        /** The number of references to rewire per unit of load. */
+        public int churnPerLoad = 1;
+        /** The probability that a churn operation also replaces the payload of a node. */
+        public double fragmentation = 0.1;
+        /** The relative tolerance of the live set size when building the graph. */
+        public double tolerance = 0.05;
+
+        void validate() {
+            if (targetHeapFraction < 0 || targetHeapFraction >= 1) {
+                throw new IllegalArgumentException("Target heap fraction must be between 0 and 1");
+            }
+            if (targetBytes < 0) {
+                throw new IllegalArgumentException("Target bytes cannot be negative");
+            }
+            if (pointersPerNode < 0) {
+                throw new IllegalArgumentException("Pointers per node cannot be negative");
+            }
+            if (minNodeSize < 0 || maxNodeSize < minNodeSize) {
+                throw new IllegalArgumentException("Node sizes must satisfy 0 <= min <= max");
+            }
+            if (churnPerLoad < 0) {
+                throw new IllegalArgumentException("Churn per load cannot be negative");
+            }
+            if (fragmentation < 0 || fragmentation > 1) {
+                throw new IllegalArgumentException("Fragmentation must be between 0 and 1");
+            }
+            if (tolerance <= 0) {
+                throw new IllegalArgumentException("Tolerance must be positive");
+            }
+        }
+
+        /**
+         * Loads the parameters from the file given in the <code>benchmark.liveSet</code> system property or the
+         * default <code>live-set.yml</code> file.
+         *
+         * @return The parsed parameters.
+         */
+        public static Parameters load() {
+            final String file = System.getProperty(PARAMETERS_PROPERTY);
+            try {
+                final InputStream input = file == null
+                        ? LiveSetLoadGenerator.class.getResourceAsStream("/" + PARAMETERS_FILE)
+                        : new FileInputStream(file);
+                if (input == null) {
+                    return new Parameters();
+                }
+                try {
+                    return new ObjectMapper(new YAMLFactory()).readValue(input, Parameters.class);
+                } finally {
+                    input.close();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+}
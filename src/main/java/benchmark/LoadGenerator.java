@@ -8,7 +8,8 @@ import java.util.List;
 
 /**
  * A load generator that can generate an arbitrary load. The generator returns a list of the 'load' objects to prevent
- * the objects from being optimised away during just-in-time compilation.
+ * the objects from being optimised away during just-in-time compilation. Generators that do not want to allocate the
+ * list can implement {@link SinkLoadGenerator} instead.
  * 
  * @author jepeders
  * @param <T> The type of objects to return.
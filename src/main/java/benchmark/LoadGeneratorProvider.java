@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+/**
+ * A service provider that creates load generators by name. Providers are discovered with the
+ * {@link java.util.ServiceLoader}, so a plugin jar only needs to list its providers in a
+ * <code>META-INF/services/benchmark.LoadGeneratorProvider</code> file to be picked up by the {@link GeneratorRegistry}.
+ * <p>
+ * A task can name the generator to use in the task file and pass it parameters:
+ * </p>
+ * <pre>
+ * fast:
+ *   periodInNanos: 40000000
+ *   deadlineInNanos: 10000000
+ *   initialWorkload: 16
+ *   generator: heap-lifetime
+ *   parameters:
+ *     survivalFraction: 0.1
+ * </pre>
+ *
+ * @author jepeders
+ */
+public interface LoadGeneratorProvider {
+
+    /**
+     * @return The name of the generators created by this provider, as used in the task file.
+     */
+    String getName();
+
+    /**
+     * Creates a new generator with the given parameters.
+     *
+     * @param parameters The parameters given to the task in the task file.
+     * @return A {@link Workload} running the generator.
+     * @throws IllegalArgumentException If the parameters are not valid.
+     */
+    Workload create(GeneratorParameters parameters);
+
+}
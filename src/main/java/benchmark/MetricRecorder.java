@@ -13,7 +13,18 @@ import org.HdrHistogram.SingleWriterRecorder;
  */
 public class MetricRecorder {
 
-    private final SingleWriterRecorder recorder = new SingleWriterRecorder(1);
+    private final SingleWriterRecorder recorder;
+
+    public MetricRecorder() {
+        this(1);
+    }
+
+    /**
+     * @param significantDigits The number of significant decimal digits the histograms keep.
+     */
+    public MetricRecorder(int significantDigits) {
+        recorder = new SingleWriterRecorder(significantDigits);
+    }
 
     /**
      * Stores an event in constant time.
@@ -24,7 +35,17 @@ public class MetricRecorder {
     public void record(long event, long expectedInterval) {
         recorder.recordValueWithExpectedInterval(event, expectedInterval);
     }
-    
+
+    /**
+     * Stores the same event a number of times in constant time.
+     *
+     * @param event The event to record.
+     * @param count The number of times the event occurred.
+     */
+    public void recordWithCount(long event, long count) {
+        recorder.recordValueWithCount(event, count);
+    }
+
     public Histogram getHistogram() {
         return recorder.getIntervalHistogram();
     }
@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import model.TaskIteration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A sampling profiler that only looks at the benchmark thread while an iteration is overrunning its deadline. The
+ * benchmark thread publishes the start of every iteration in a volatile field. The profiler thread parks until the
+ * deadline of the current iteration has passed, and only if the same iteration is still running, it captures the
+ * stack of the benchmark thread every sample interval until the iteration ends. As long as no iteration misses its
+ * deadline, the profiler wakes up about once per deadline and does nothing else.
+ * <p>
+ * The samples are aggregated in the collapsed stack format, one line per distinct stack with the frames from the
+ * root to the leaf separated by semicolons and followed by the number of samples, which can be turned into a flame
+ * graph by the common flame graph tools.
+ * </p>
+ *
+ * @author jepeders
+ */
+class MissProfiler extends Thread {
+
+    public static final String REPORT_NAME = "stacks";
+
+    private static final long SAMPLE_INTERVAL_IN_NANOS = 1000000;
+    private static final long IDLE = 0;
+
+    private final Thread benchmarkThread;
+    private final long deadlineInNanos;
+    private final Map<String, Long> stacks = new HashMap<String, Long>();
+
+    /* Written by the benchmark thread, read by the profiler */
+    private volatile long iterationStartInNanos = IDLE;
+    private volatile boolean running = true;
+
+    /* Only touched by the profiler thread until it has been joined */
+    private long samples;
+    private long sampledIterations;
+
+    /**
+     * Creates a profiler for the current thread.
+     *
+     * @param deadlineInNanos The deadline of the iterations. Must be positive.
+     */
+    MissProfiler(long deadlineInNanos) {
+        super("miss-profiler");
+        setDaemon(true);
+        this.benchmarkThread = Thread.currentThread();
+        this.deadlineInNanos = deadlineInNanos;
+    }
+
+    /**
+     * Marks the start of an iteration. Called by the benchmark thread before it takes the start time of the iteration,
+     * so the volatile store is not part of the timed window.
+     */
+    void begin(long startInNanos) {
+        iterationStartInNanos = startInNanos;
+    }
+
+    /**
+     * Marks the end of the current iteration. Called by the benchmark thread right after the iteration.
+     */
+    void end() {
+        iterationStartInNanos = IDLE;
+    }
+
+    @Override
+    public void run() {
+        long lastSampledStart = IDLE;
+        while (running) {
+            final long startInNanos = iterationStartInNanos;
+            if (startInNanos == IDLE) {
+                LockSupport.parkNanos(deadlineInNanos);
+                continue;
+            }
+            final long overrunInNanos = System.nanoTime() - startInNanos - deadlineInNanos;
+            if (overrunInNanos < 0) {
+                LockSupport.parkNanos(-overrunInNanos);
+                continue;
+            }
+            final StackTraceElement[] stack = benchmarkThread.getStackTrace();
+            /* Only keep the sample if the overrunning iteration was still running when the stack was taken */
+            if (iterationStartInNanos == startInNanos && stack.length > 0) {
+                addSample(stack);
+                if (startInNanos != lastSampledStart) {
+                    sampledIterations++;
+                    lastSampledStart = startInNanos;
+                }
+            }
+            LockSupport.parkNanos(SAMPLE_INTERVAL_IN_NANOS);
+        }
+    }
+
+    /**
+     * Stops the profiler and adds the collapsed stacks and a summary to the given iteration.
+     */
+    void terminate(TaskIteration iteration) {
+        running = false;
+        LockSupport.unpark(this);
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while stopping the profiler", e);
+        }
+        iteration.addNote(String.format("Miss profiler: %d stack samples in %d iterations overrunning the deadline",
+                samples, sampledIterations));
+        if (!stacks.isEmpty()) {
+            iteration.addReport(REPORT_NAME, describe());
+        }
+    }
+
+    private void addSample(StackTraceElement[] stack) {
+        final StringBuilder collapsed = new StringBuilder();
+        /* The stack trace starts with the leaf */
+        for (int i = stack.length - 1; i >= 0; i--) {
+            collapsed.append(stack[i].getClassName()).append('.').append(stack[i].getMethodName());
+            if (i > 0) {
+                collapsed.append(';');
+            }
+        }
+        final String key = collapsed.toString();
+        final Long count = stacks.get(key);
+        stacks.put(key, count == null ? 1 : count + 1);
+        samples++;
+    }
+
+    private String describe() {
+        final List<String> keys = new ArrayList<String>(stacks.keySet());
+        Collections.sort(keys);
+        final StringBuilder report = new StringBuilder();
+        for (String key : keys) {
+            report.append(key).append(' ').append(stacks.get(key)).append(String.format("%n"));
+        }
+        return report.toString();
+    }
+
+}
@@ -0,0 +1,243 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import model.Arrival;
+import model.Task;
+import model.TaskIteration;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a {@link Task} in an open loop. A dispatcher, running in the calling thread, computes the intended start time
+ * of every request from the {@link Arrival} distribution and puts it in a bounded {@link ArrivalQueue}, which is served
+ * by a number of worker threads. Requests arriving while the queue is full are dropped and counted.
+ * <p>
+ * Because the latencies are measured from the intended start times, and not from the time the dispatcher or a worker
+ * got around to the request, the delays caused by an overloaded system are part of the histograms:
+ * </p>
+ * <ul>
+ * <li>The deadline histogram holds the end-to-end latency from the intended start to the end of the request.</li>
+ * <li>The <code>queue</code> histogram holds the time from the intended start until a worker started the request.</li>
+ * <li>The <code>service</code> histogram holds the time the worker spent running the request.</li>
+ * <li>The period histogram holds the time between the arrivals as seen by the dispatcher.</li>
+ * </ul>
+ *
+ * @author jepeders
+ */
+class OpenLoopRunner {
+
+    public static final String QUEUE_HISTOGRAM = "queue";
+    public static final String SERVICE_HISTOGRAM = "service";
+
+    private static final long STOP = Long.MIN_VALUE;
+    private static final long SPIN_THRESHOLD_IN_NANOS = 50000;
+    private static final long SEED = 1843710252; /* Random number */
+
+    private final Task task;
+    private final Arrival arrival;
+    private final Workload[] workloads;
+    private final TimerCalibration overhead;
+    private final Random random = new Random(SEED);
+
+    OpenLoopRunner(Task task, Workload[] workloads, TimerCalibration overhead) {
+        this.task = task;
+        this.arrival = task.getArrival();
+        this.workloads = workloads;
+        this.overhead = overhead;
+    }
+
+    /**
+     * @return The load each request generates when the task runs with the given load.
+     */
+    static int getRequestLoad(Task task, int load) {
+        return Arrival.SCALE_RATE.equals(task.getArrival().scaling) ? task.initialWorkload : load;
+    }
+
+    /**
+     * Dispatches requests for the given runtime and waits for the workers to serve the queued requests.
+     *
+     * @param load           The load of the iteration.
+     * @param runtimeInNanos The time to dispatch requests for.
+     * @return The recorded histograms.
+     */
+    TaskIteration run(int load, long runtimeInNanos) {
+        final double ratePerSecond = Arrival.SCALE_RATE.equals(arrival.scaling)
+                ? arrival.ratePerSecond * load / Math.max(1, task.initialWorkload) : arrival.ratePerSecond;
+        final int requestLoad = getRequestLoad(task, load);
+        final int burstSize = Arrival.BURSTY.equals(arrival.distribution) ? arrival.burstSize : 1;
+        final double meanIntervalInNanos = burstSize * SECONDS.toNanos(1) / ratePerSecond;
+
+        final ArrivalQueue queue = new ArrivalQueue(arrival.queueCapacity);
+        final ConcurrentMetricRecorder latencyRecorder = new ConcurrentMetricRecorder();
+        final ConcurrentMetricRecorder queueRecorder = new ConcurrentMetricRecorder();
+        final ConcurrentMetricRecorder serviceRecorder = new ConcurrentMetricRecorder();
+        final MetricRecorder periodRecorder = new MetricRecorder();
+
+        final SystemMetrics statusBefore = new SystemMetrics();
+        final HiccupRecorder hiccupRecorder = new HiccupRecorder(true, overhead.sleepOvershootInNanos);
+        final Worker[] workers = new Worker[workloads.length];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i, workloads[i], requestLoad, queue, latencyRecorder, queueRecorder,
+                    serviceRecorder);
+            workers[i].start();
+        }
+        hiccupRecorder.start();
+
+        final long startTimeInNanos = System.nanoTime();
+        final long stopTimeInNanos = startTimeInNanos + runtimeInNanos;
+        long arrivals = 0;
+        long dropped = 0;
+        long lastDispatchInNanos = -1;
+        /* The offset is kept as a double, so rounding does not make the rate drift */
+        double offsetInNanos = 0;
+        long intendedStartInNanos = startTimeInNanos;
+        try {
+            /* Without load there are no arrivals when scaling by rate */
+            while (ratePerSecond > 0 && intendedStartInNanos < stopTimeInNanos) {
+                waitUntil(intendedStartInNanos);
+
+                final long dispatchInNanos = System.nanoTime();
+                if (lastDispatchInNanos > 0) {
+                    periodRecorder.record(dispatchInNanos - lastDispatchInNanos, 0);
+                }
+                lastDispatchInNanos = dispatchInNanos;
+
+                for (int i = 0; i < burstSize; i++) {
+                    arrivals++;
+                    if (!queue.offer(intendedStartInNanos)) {
+                        dropped++;
+                    }
+                }
+
+                offsetInNanos += nextInterval(meanIntervalInNanos);
+                intendedStartInNanos = startTimeInNanos + (long) offsetInNanos;
+            }
+
+            for (int i = 0; i < workers.length; i++) {
+                queue.put(STOP);
+            }
+            for (Worker worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Worker worker : workers) {
+                worker.interrupt();
+            }
+            throw new IllegalStateException("Interrupted while running the open loop", e);
+        }
+        final long drainedInNanos = System.nanoTime() - startTimeInNanos;
+
+        final Histogram hiccupHistogram = hiccupRecorder.terminate();
+        final SystemMetrics statusAfter = new SystemMetrics();
+        for (Worker worker : workers) {
+            if (worker.failure != null) {
+                throw new IllegalStateException("Worker " + worker.getName() + " failed", worker.failure);
+            }
+        }
+
+        final Histogram latencyHistogram = latencyRecorder.getHistogram();
+        final TaskIteration iteration = new TaskIteration(load, statusBefore, statusAfter, latencyHistogram,
+                periodRecorder.getHistogram(), hiccupHistogram);
+        iteration.addHistogram(QUEUE_HISTOGRAM, queueRecorder.getHistogram());
+        iteration.addHistogram(SERVICE_HISTOGRAM, serviceRecorder.getHistogram());
+        iteration.addNote(String.format("Open loop: %s arrivals of %d load, offered %.1f requests/s, "
+                        + "completed %d requests (%.1f requests/s), dropped %d of %d requests (%.2f%%)",
+                arrival.distribution, requestLoad, ratePerSecond, latencyHistogram.getTotalCount(),
+                latencyHistogram.getTotalCount() * (double) SECONDS.toNanos(1) / drainedInNanos, dropped, arrivals,
+                arrivals == 0 ? 0 : 100d * dropped / arrivals));
+        return iteration;
+    }
+
+    private double nextInterval(double meanIntervalInNanos) {
+        if (Arrival.POISSON.equals(arrival.distribution)) {
+            return -Math.log(1 - random.nextDouble()) * meanIntervalInNanos;
+        }
+        return meanIntervalInNanos;
+    }
+
+    /**
+     * Parks until shortly before the given time and spins for the rest, since parking is not precise enough for high
+     * arrival rates.
+     */
+    private static void waitUntil(long timeInNanos) {
+        long remainingInNanos = timeInNanos - System.nanoTime();
+        while (remainingInNanos > SPIN_THRESHOLD_IN_NANOS) {
+            LockSupport.parkNanos(remainingInNanos - SPIN_THRESHOLD_IN_NANOS);
+            remainingInNanos = timeInNanos - System.nanoTime();
+        }
+        while (System.nanoTime() < timeInNanos) {
+            /* Spin */
+        }
+    }
+
+    private final class Worker extends Thread {
+
+        private final Workload workload;
+        private final int requestLoad;
+        private final ArrivalQueue queue;
+        private final ConcurrentMetricRecorder latencyRecorder;
+        private final ConcurrentMetricRecorder queueRecorder;
+        private final ConcurrentMetricRecorder serviceRecorder;
+        private volatile Throwable failure;
+
+        Worker(int index, Workload workload, int requestLoad, ArrivalQueue queue,
+               ConcurrentMetricRecorder latencyRecorder, ConcurrentMetricRecorder queueRecorder,
+               ConcurrentMetricRecorder serviceRecorder) {
+            super("open-loop-worker-" + index);
+            setDaemon(true);
+            this.workload = workload;
+            this.requestLoad = requestLoad;
+            this.queue = queue;
+            this.latencyRecorder = latencyRecorder;
+            this.queueRecorder = queueRecorder;
+            this.serviceRecorder = serviceRecorder;
+        }
+
+        @Override
+        public void run() {
+            final long serviceOverheadInNanos = overhead.emptyIterationInNanos;
+            try {
+                while (true) {
+                    final long intendedStartInNanos = queue.take();
+                    if (intendedStartInNanos == STOP) {
+                        return;
+                    }
+                    final long startInNanos = System.nanoTime();
+                    task.iteration(workload, requestLoad);
+                    final long endInNanos = System.nanoTime();
+
+                    queueRecorder.record(Math.max(0, startInNanos - intendedStartInNanos), 0);
+                    serviceRecorder.record(Math.max(0, endInNanos - startInNanos - serviceOverheadInNanos), 0);
+                    latencyRecorder.record(Math.max(0, endInNanos - intendedStartInNanos - serviceOverheadInNanos),
+                            0);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                failure = e;
+                /* Keep taking requests, so the dispatcher is not blocked by a full queue */
+                drain();
+            }
+        }
+
+        private void drain() {
+            try {
+                while (queue.take() != STOP) {
+                    /* Discard */
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+/**
+ * A load generator that splits the work of every call across a number of threads. The {@link BenchmarkRunner} runs
+ * every load once for each level of parallelism of the generator and reports the speedup, efficiency and tail
+ * amplification compared to the first level.
+ *
+ * @author jepeders
+ */
+public interface ParallelGenerator {
+
+    /**
+     * @return The levels of parallelism to run every load with. The first level is the baseline.
+     */
+    int[] getParallelismLevels();
+
+    /**
+     * Sets the number of threads used by the following calls to the generator. Called outside the timed window.
+     *
+     * @param parallelism The number of threads.
+     */
+    void setParallelism(int parallelism);
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the {@link ParallelGenerator}s of a task with one level of parallelism.
+ *
+ * @author jepeders
+ */
+public class ParallelismVariant implements Variant {
+
+    private final List<ParallelGenerator> generators;
+    private final int parallelism;
+
+    public ParallelismVariant(List<ParallelGenerator> generators, int parallelism) {
+        this.generators = generators;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param generators The generators to set the parallelism of. The levels are taken from the first generator.
+     * @return One variant for each level of parallelism of the generators.
+     */
+    public static List<Variant> of(List<ParallelGenerator> generators) {
+        final List<Variant> variants = new ArrayList<Variant>();
+        for (int parallelism : generators.get(0).getParallelismLevels()) {
+            variants.add(new ParallelismVariant(generators, parallelism));
+        }
+        return variants;
+    }
+
+    @Override
+    public String getName() {
+        return "parallelism_" + parallelism;
+    }
+
+    @Override
+    public double getLevel() {
+        return parallelism;
+    }
+
+    @Override
+    public void begin(int load) {
+        for (ParallelGenerator generator : generators) {
+            generator.setParallelism(parallelism);
+        }
+    }
+
+    @Override
+    public void end(int load) {
+        /* The parallelism is kept until the next variant sets it */
+    }
+
+    @Override
+    public String toString() {
+        return "parallelism " + parallelism;
+    }
+
+}
@@ -0,0 +1,310 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import model.TaskIteration;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A load generator that pushes items through a pipeline of threads, like a data acquisition chain of producer,
+ * transform, aggregate and sink. The calling thread produces the items and hands them in batches to the first stage.
+ * Every stage runs in its own thread, does some work on each item and hands the batch on to the next stage through a
+ * {@link StageQueue}. The last stage is the sink, which aggregates the items. A call returns when the sink has received
+ * every item, so the deadline histogram holds the time to push <code>load</code> items through the pipeline.
+ * <p>
+ * The generator records the time each batch spent in every stage, from being handed to the stage until the stage was
+ * done with it, in the <code>stage1</code>, <code>stage2</code>, ... histograms, and the time from producing an item
+ * until the sink received it in the <code>pipeline</code> histogram. The values are recorded once for every item of a
+ * batch. The batches are allocated before the iterations, so a call does not allocate any objects.
+ * </p>
+ *
+ * @author jepeders
+ */
+public class PipelineLoadGenerator implements SinkLoadGenerator, GeneratorLifecycle, ResultContributor {
+
+    public static final String END_TO_END_HISTOGRAM = "pipeline";
+    public static final String STAGE_HISTOGRAM = "stage";
+
+    private static final long SEED = 1843710252; /* Random number */
+    private static final Batch STOP = new Batch(0);
+
+    private final Parameters parameters;
+    private final ConcurrentMetricRecorder endToEndRecorder = new ConcurrentMetricRecorder();
+    private final ConcurrentMetricRecorder[] stageRecorders;
+    private final AtomicLong completed = new AtomicLong();
+
+    private Batch[] batches = new Batch[0];
+    private StageQueue<Batch>[] queues;
+    private Stage[] stages;
+    /* Written by the sink before it counts a batch as completed */
+    private long sum;
+    private volatile Throwable failure;
+
+    public PipelineLoadGenerator() {
+        this(new Parameters());
+    }
+
+    /**
+     * Creates a generator with the given parameters.
+     *
+     * @param parameters The parameters of the pipeline.
+     * @throws IllegalArgumentException If the parameters are not valid.
+     */
+    public PipelineLoadGenerator(Parameters parameters) {
+        parameters.validate();
+        this.parameters = parameters;
+        this.stageRecorders = new ConcurrentMetricRecorder[parameters.stages];
+        for (int i = 0; i < stageRecorders.length; i++) {
+            stageRecorders[i] = new ConcurrentMetricRecorder();
+        }
+    }
+
+    /**
+     * Produces <code>load</code> items, hands them to the pipeline and waits for the sink to receive all of them.
+     */
+    @Override
+    public void generateLoad(int load, Blackhole blackhole) {
+        allocateBatches(load);
+        final long target = completed.get() + batchCount(load);
+        int batchIndex = 0;
+        try {
+            for (int first = 0; first < load; first += parameters.batchSize) {
+                final Batch batch = batches[batchIndex++];
+                batch.size = Math.min(parameters.batchSize, load - first);
+                for (int i = 0; i < batch.size; i++) {
+                    batch.createdInNanos[i] = System.nanoTime();
+                    batch.values[i] = work(SEED + first + i, parameters.workPerItem);
+                }
+                batch.enteredInNanos = System.nanoTime();
+                queues[0].put(batch);
+            }
+            for (int attempt = 0; completed.get() < target; attempt++) {
+                if (failure != null) {
+                    throw new IllegalStateException("A stage of the pipeline failed", failure);
+                }
+                StageQueue.backOff(attempt);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the pipeline", e);
+        }
+        blackhole.consume(sum);
+    }
+
+    /**
+     * Allocates the batches and starts the stage threads.
+     */
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void setup(int load) {
+        allocateBatches(load);
+        failure = null;
+        queues = new StageQueue[parameters.stages];
+        stages = new Stage[parameters.stages];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = StageQueue.create(parameters.queue, parameters.queueCapacity);
+        }
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new Stage(i, queues[i], i + 1 < queues.length ? queues[i + 1] : null);
+            stages[i].start();
+        }
+    }
+
+    /**
+     * Stops the stage threads and waits for them to finish.
+     */
+    @Override
+    public void teardown(int load) {
+        try {
+            queues[0].put(STOP);
+            for (Stage stage : stages) {
+                stage.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Stage stage : stages) {
+                stage.interrupt();
+            }
+            throw new IllegalStateException("Interrupted while stopping the pipeline", e);
+        }
+    }
+
+    @Override
+    public void contribute(TaskIteration iteration) {
+        iteration.addHistogram(END_TO_END_HISTOGRAM, endToEndRecorder.getHistogram());
+        for (int i = 0; i < stageRecorders.length; i++) {
+            iteration.addHistogram(STAGE_HISTOGRAM + (i + 1), stageRecorders[i].getHistogram());
+        }
+        final String note = String.format("Pipeline: %d stages connected by %s queues of %d batches, %d items per "
+                + "batch", parameters.stages, parameters.queue, parameters.queueCapacity, parameters.batchSize);
+        if (!iteration.getNotes().contains(note)) {
+            iteration.addNote(note);
+        }
+    }
+
+    private int batchCount(int load) {
+        return (load + parameters.batchSize - 1) / parameters.batchSize;
+    }
+
+    private void allocateBatches(int load) {
+        final int count = batchCount(load);
+        if (batches.length < count) {
+            final Batch[] allocated = new Batch[count];
+            System.arraycopy(batches, 0, allocated, 0, batches.length);
+            for (int i = batches.length; i < count; i++) {
+                allocated[i] = new Batch(parameters.batchSize);
+            }
+            batches = allocated;
+        }
+    }
+
+    /**
+     * Runs a number of rounds of a xorshift random number generator on the value.
+     */
+    static long work(long value, int rounds) {
+        long x = value;
+        for (int i = 0; i < rounds; i++) {
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+        }
+        return x;
+    }
+
+    private static final class Batch {
+
+        final long[] values;
+        final long[] createdInNanos;
+        int size;
+        long enteredInNanos;
+
+        Batch(int capacity) {
+            this.values = new long[capacity];
+            this.createdInNanos = new long[capacity];
+        }
+    }
+
+    private final class Stage extends Thread {
+
+        private final int index;
+        private final StageQueue<Batch> input;
+        private final StageQueue<Batch> output;
+
+        Stage(int index, StageQueue<Batch> input, StageQueue<Batch> output) {
+            super("pipeline-stage-" + (index + 1));
+            setDaemon(true);
+            this.index = index;
+            this.input = input;
+            this.output = output;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Batch batch;
+                while ((batch = input.take()) != STOP) {
+                    process(batch);
+                }
+                if (output != null) {
+                    output.put(STOP);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                failure = e;
+                /* Keep taking batches, so the stages before this one are not blocked by a full queue */
+                drain();
+            }
+        }
+
+        private void process(Batch batch) throws InterruptedException {
+            for (int i = 0; i < batch.size; i++) {
+                batch.values[i] = work(batch.values[i], parameters.workPerItem);
+            }
+            final long doneInNanos = System.nanoTime();
+            stageRecorders[index].recordWithCount(doneInNanos - batch.enteredInNanos, batch.size);
+            if (output != null) {
+                batch.enteredInNanos = System.nanoTime();
+                output.put(batch);
+            } else {
+                long total = sum;
+                for (int i = 0; i < batch.size; i++) {
+                    endToEndRecorder.record(doneInNanos - batch.createdInNanos[i], 0);
+                    total += batch.values[i];
+                }
+                sum = total;
+                completed.incrementAndGet();
+            }
+        }
+
+        private void drain() {
+            try {
+                while (input.take() != STOP) {
+                    /* Discard */
+                }
+                if (output != null) {
+                    output.put(STOP);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Provides the generator under the name <code>pipeline</code>. The parameters given in the task file are bound to
+     * {@link Parameters}.
+     */
+    public static class Provider implements LoadGeneratorProvider {
+
+        @Override
+        public String getName() {
+            return "pipeline";
+        }
+
+        @Override
+        public Workload create(GeneratorParameters parameters) {
+            return Workload.of(new PipelineLoadGenerator(parameters.isEmpty() ? new Parameters()
+                    : parameters.bind(Parameters.class)));
+        }
+    }
+
+    /**
+     * The parameters of the pipeline.
+     */
+    public static class Parameters {
+
+        /** The number of stage threads after the producer. The last stage is the sink. */
+        public int stages = 3;
+        /** The type of the queues between the stages: blocking, ring or spsc. */
+        public String queue = StageQueue.BLOCKING;
+        /** The number of batches each queue can hold. */
+        public int queueCapacity = 64;
+        /** The number of items handed from one stage to the next at once. */
+        public int batchSize = 1;
+        /** The number of random number generator rounds each stage runs on an item. */
+        public int workPerItem = 100;
+
+        void validate() {
+            if (stages < 1) {
+                throw new IllegalArgumentException("A pipeline needs at least 1 stage");
+            }
+            if (!StageQueue.isKnown(queue)) {
+                throw new IllegalArgumentException("Unknown queue type " + queue);
+            }
+            if (queueCapacity < 1) {
+                throw new IllegalArgumentException("The queue capacity must be at least 1");
+            }
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("The batch size must be at least 1");
+            }
+            if (workPerItem < 0) {
+                throw new IllegalArgumentException("Work per item cannot be negative");
+            }
+        }
+    }
+
+}
@@ -5,7 +5,6 @@ package benchmark;
 
 import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.List;
 import java.util.Random;
 
 /**
@@ -15,25 +14,25 @@ import java.util.Random;
  *
  * @author jepeders
  */
-public class RandomMemoryLoadGenerator implements LoadGenerator<Object> {
+public class RandomMemoryLoadGenerator implements SinkLoadGenerator {
 
     private static final long SEED = 1843710252; /* Random number */
     private static final int UPPER_LIMIT = 65536; /* 1 << 16 */
 
     private Random random;
 
-    private LinkedList<Object> young;
-    private LinkedList<Object> old;
+    private LinkedList<double[]> old;
 
     /**
      * Generates a load by storing memory
      *
-     * @param load The amount of times the load generator should iterate the same task.
-     * @return A {@link List} of objects to prevent the data from being optimized away at compile-time.
-     * @throws IllegalArgumentException if the load is larger than 262144 (1 << 18)
+     * @param load      The amount of times the load generator should iterate the same task.
+     * @param blackhole The sink consuming the arrays which are not moved to the old list, to prevent the data from
+     *                  being optimized away at compile-time.
+     * @throws IllegalArgumentException if the load is larger than 65536 (1 << 16)
      */
     @Override
-    public List<Object> generateLoad(int load) {
+    public void generateLoad(int load, Blackhole blackhole) {
         if (load > UPPER_LIMIT) {
             throw new IllegalArgumentException("Load cannot be higher than " + UPPER_LIMIT);
         }
@@ -41,56 +40,59 @@ public class RandomMemoryLoadGenerator implements LoadGenerator<Object> {
         random = new Random(SEED);
 
         /* Create a linked list to use random memory cells */
-        old = new LinkedList<Object>();
+        old = new LinkedList<double[]>();
 
         for (int i = 0; i < load; i++) {
-            /* (Re-)initialise the young list */
-            young = new LinkedList<Object>();
-
-            /* Creates a number of objects of a random size */
+            /* Creates an array of a random size */
             int size = random.nextInt(UPPER_LIMIT);
-            young.add(generateObjectWithArrayOfSize(size));
+            double[] young = generateArrayOfSize(size);
 
-            /* 25% of the times we move one random element from young to old to simulation fractioning */
-            if (random.nextBoolean() && random.nextBoolean() && !young.isEmpty()) {
-                Object removed = young.remove(random.nextInt(young.size()));
+            /* 25% of the times we move the young array to old to simulation fractioning */
+            if (random.nextBoolean() && random.nextBoolean()) {
                 if (old.size() < UPPER_LIMIT) {
-                    old.add(removed);
+                    old.add(young);
                 }
 
                 /* 12.5% of the times we remove one random element from old to simulate fractioning */
                 if (random.nextBoolean() && !old.isEmpty()) {
                     old.remove(random.nextInt(old.size()));
                 }
+            } else {
+                blackhole.consume(young);
             }
         }
-        return young;
-    }
-
-    public List<Object> dummyMethodGetOld() {
-        return old;
-    }
-
-    public List<Object> dummyMethodGetYoung() {
-        return young;
+        blackhole.consume(old);
     }
 
     /**
-     * Generates a single custom object containing an array of the given size filled with random data.
+     * Generates an array of the given size filled with random data.
      *
      * @param size The size of the array to create.
-     * @return An {@link Object} containing an array.
+     * @return An array of doubles.
      */
-    private Object generateObjectWithArrayOfSize(int size) {
-        /* Create a double array */
+    private double[] generateArrayOfSize(int size) {
         final double tmp[] = new double[size];
         Arrays.fill(tmp, random.nextDouble());
+        return tmp;
+    }
 
-        /* Return an object containing the doubles to avoid it being optimised away */
-        return new Object() {
-            @SuppressWarnings("unused")
-            public double xs[] = tmp;
-        };
+    /**
+     * Provides the generator under the name <code>random-memory</code>. The generator takes no parameters.
+     */
+    public static class Provider implements LoadGeneratorProvider {
+
+        @Override
+        public String getName() {
+            return "random-memory";
+        }
+
+        @Override
+        public Workload create(GeneratorParameters parameters) {
+            if (!parameters.isEmpty()) {
+                throw new IllegalArgumentException("The random-memory generator takes no parameters");
+            }
+            return Workload.of(new RandomMemoryLoadGenerator());
+        }
     }
 
 }
@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Reads the raw samples written by a {@link SampleCapture}. Run from the command line, the reader prints a summary of
+ * the samples, including the autocorrelation of the deadlines, or the samples themselves as CSV:
+ *
+ * <pre>
+ * java -cp java-micro-benchmark-0.8.jar benchmark.RawSampleReader 16_raw [-csv]
+ * </pre>
+ *
+ * @author jepeders
+ */
+public class RawSampleReader {
+
+    private static final int[] LAGS = {1, 2, 5, 10, 100};
+
+    public final int load;
+    public final long startInMillis;
+    /** The start times of the iterations in nanoseconds since the start of the load. */
+    public final long[] timestamps;
+    public final long[] deadlines;
+    /** The period deltas in nanoseconds, where the first iteration has a period of -1. */
+    public final long[] periods;
+
+    private RawSampleReader(int load, long startInMillis, long[] timestamps, long[] deadlines, long[] periods) {
+        this.load = load;
+        this.startInMillis = startInMillis;
+        this.timestamps = timestamps;
+        this.deadlines = deadlines;
+        this.periods = periods;
+    }
+
+    /**
+     * Reads all the samples of a file into memory.
+     *
+     * @param file The file written by a {@link SampleCapture}.
+     * @return The samples in the order they were recorded.
+     * @throws IOException If the file could not be read or is not a sample file.
+     */
+    public static RawSampleReader read(File file) throws IOException {
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (input.readLong() != SampleCapture.MAGIC) {
+                throw new IOException(file + " is not a raw sample file");
+            }
+            final int version = input.readInt();
+            if (version != SampleCapture.VERSION) {
+                throw new IOException("Unsupported raw sample file version " + version);
+            }
+            final int load = input.readInt();
+            final long startInMillis = input.readLong();
+
+            /* Every sample takes one long per column, so the file size bounds the number of samples */
+            final int capacity = (int) Math.min(Integer.MAX_VALUE, file.length() / (SampleCapture.COLUMNS * 8));
+            final long[] timestamps = new long[capacity];
+            final long[] deadlines = new long[capacity];
+            final long[] periods = new long[capacity];
+            int count = 0;
+            while (true) {
+                final int size;
+                try {
+                    size = input.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                readColumn(input, timestamps, count, size);
+                readColumn(input, deadlines, count, size);
+                readColumn(input, periods, count, size);
+                count += size;
+            }
+            return new RawSampleReader(load, startInMillis, Arrays.copyOf(timestamps, count),
+                    Arrays.copyOf(deadlines, count), Arrays.copyOf(periods, count));
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void readColumn(DataInputStream input, long[] column, int offset, int size) throws IOException {
+        for (int i = offset; i < offset + size; i++) {
+            column[i] = input.readLong();
+        }
+    }
+
+    /**
+     * @param lag The distance between the samples to correlate.
+     * @return The autocorrelation of the deadlines at the given lag, between -1 and 1, or NaN if there are too few
+     * samples.
+     */
+    public double getDeadlineAutocorrelation(int lag) {
+        final int n = deadlines.length;
+        if (lag >= n) {
+            return Double.NaN;
+        }
+        double mean = 0;
+        for (long deadline : deadlines) {
+            mean += deadline;
+        }
+        mean /= n;
+        double variance = 0;
+        double covariance = 0;
+        for (int i = 0; i < n; i++) {
+            variance += (deadlines[i] - mean) * (deadlines[i] - mean);
+            if (i + lag < n) {
+                covariance += (deadlines[i] - mean) * (deadlines[i + lag] - mean);
+            }
+        }
+        return variance == 0 ? Double.NaN : covariance / variance;
+    }
+
+    public void writeSummary(PrintStream output) {
+        output.println(String.format("Load %d, %d samples over %.3fs, started at %tF %<tT", load, deadlines.length,
+                deadlines.length == 0 ? 0 : timestamps[timestamps.length - 1] / 1e9, startInMillis));
+        if (deadlines.length == 0) {
+            return;
+        }
+        final long[] sorted = Arrays.copyOf(deadlines, deadlines.length);
+        Arrays.sort(sorted);
+        output.println(String.format("Deadline (ns): min %d, p50 %d, p99 %d, max %d", sorted[0],
+                sorted[(int) (0.5 * (sorted.length - 1))], sorted[(int) (0.99 * (sorted.length - 1))],
+                sorted[sorted.length - 1]));
+        final StringBuilder correlations = new StringBuilder("Deadline autocorrelation:");
+        for (int lag : LAGS) {
+            correlations.append(String.format(" lag %d %.3f", lag, getDeadlineAutocorrelation(lag)));
+        }
+        output.println(correlations);
+    }
+
+    public void writeCsv(PrintStream output) {
+        output.println("timestamp,deadline,period");
+        for (int i = 0; i < deadlines.length; i++) {
+            output.println(timestamps[i] + "," + deadlines[i] + "," + periods[i]);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: RawSampleReader file [-csv]");
+            System.exit(1);
+            return;
+        }
+        final RawSampleReader reader = read(new File(args[0]));
+        if (args.length > 1 && args[1].equals("-csv")) {
+            reader.writeCsv(System.out);
+        } else {
+            reader.writeSummary(System.out);
+        }
+    }
+
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import model.TaskIteration;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A load generator that keeps the reference processing of the garbage collector busy. For every unit of load it
+ * creates weak, soft and phantom references to new payloads, adds entries with new keys to a {@link WeakHashMap} and
+ * registers new payloads with a cleaner. The payloads are dropped right away, so every reference must be cleared or
+ * enqueued by the collector. The last references are kept reachable in a ring, since the collector only processes
+ * references which are themselves alive; older references are dropped as new ones are created.
+ * <p>
+ * On Java 9 and later the payloads are registered with a <code>java.lang.ref.Cleaner</code>, which is looked up by
+ * reflection. On older JVMs the cleaner is emulated with phantom references, which are cleaned by the benchmark thread
+ * when it drains the reference queues at the end of every call.
+ * </p>
+ * <p>
+ * Every load notes the number of references created and how many were cleared, enqueued or cleaned, next to the
+ * number of collections and the collection time during the load, so the growth of the collection time can be related
+ * to the number of references.
+ * </p>
+ *
+ * @author jepeders
+ */
+public class ReferenceLoadGenerator implements SinkLoadGenerator, GeneratorLifecycle, ResultContributor {
+
+    private static final int WEAK = 0;
+    private static final int SOFT = 1;
+    private static final int PHANTOM = 2;
+    private static final int WEAK_MAP = 3;
+    private static final int CLEANER = 4;
+    private static final String[] NAMES = { "weak", "soft", "phantom", "weak map", "cleaner" };
+
+    private final Parameters parameters;
+    private final Reference<?>[] retained;
+    private final ReferenceQueue<Object> phantomQueue = new ReferenceQueue<Object>();
+    private final ReferenceQueue<Object> cleanerQueue = new ReferenceQueue<Object>();
+    private final Map<Object, byte[]> weakMap = new WeakHashMap<Object, byte[]>();
+    private final AtomicLong cleaned = new AtomicLong();
+    private final Object cleaner;
+    private final Method register;
+    private final long[] created = new long[NAMES.length];
+    /* Cleared weak and soft references, enqueued phantom references, expunged map entries and cleaned payloads */
+    private final long[] processed = new long[NAMES.length];
+
+    private int next;
+    private long weakMapEntries;
+    private long expungedEntries;
+    private long collectionsBefore;
+    private long collectionTimeBefore;
+
+    public ReferenceLoadGenerator() {
+        this(new Parameters());
+    }
+
+    /**
+     * Creates a generator with the given parameters.
+     *
+     * @param parameters The number of references of each kind per unit of load.
+     * @throws IllegalArgumentException If the parameters are not valid.
+     */
+    public ReferenceLoadGenerator(Parameters parameters) {
+        parameters.validate();
+        this.parameters = parameters;
+        this.retained = new Reference<?>[parameters.retained];
+
+        Object cleaner = null;
+        Method register = null;
+        try {
+            final Class<?> type = Class.forName("java.lang.ref.Cleaner");
+            cleaner = type.getMethod("create").invoke(null);
+            register = type.getMethod("register", Object.class, Runnable.class);
+        } catch (Exception e) {
+            /* Before Java 9, the cleaner is emulated with phantom references */
+            cleaner = null;
+            register = null;
+        }
+        this.cleaner = cleaner;
+        this.register = register;
+    }
+
+    /**
+     * Creates and drops the references of <code>load</code> units and drains the reference queues.
+     */
+    @Override
+    public void generateLoad(int load, Blackhole blackhole) {
+        for (int unit = 0; unit < load; unit++) {
+            for (int i = 0; i < parameters.weakPerLoad; i++) {
+                retain(new WeakReference<Object>(newPayload()));
+            }
+            for (int i = 0; i < parameters.softPerLoad; i++) {
+                retain(new SoftReference<Object>(newPayload()));
+            }
+            for (int i = 0; i < parameters.phantomPerLoad; i++) {
+                retain(new PhantomReference<Object>(newPayload(), phantomQueue));
+            }
+            for (int i = 0; i < parameters.weakMapEntriesPerLoad; i++) {
+                weakMap.put(new Object(), newPayload());
+            }
+            for (int i = 0; i < parameters.cleanersPerLoad; i++) {
+                registerCleaner(newPayload());
+            }
+        }
+        created[WEAK] += (long) load * parameters.weakPerLoad;
+        created[SOFT] += (long) load * parameters.softPerLoad;
+        created[PHANTOM] += (long) load * parameters.phantomPerLoad;
+        created[WEAK_MAP] += (long) load * parameters.weakMapEntriesPerLoad;
+        created[CLEANER] += (long) load * parameters.cleanersPerLoad;
+        weakMapEntries += (long) load * parameters.weakMapEntriesPerLoad;
+        drain(blackhole);
+    }
+
+    @Override
+    public void setup(int load) {
+        long collections = 0;
+        long collectionTime = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections += Math.max(0, bean.getCollectionCount());
+            collectionTime += Math.max(0, bean.getCollectionTime());
+        }
+        collectionsBefore = collections;
+        collectionTimeBefore = collectionTime;
+    }
+
+    @Override
+    public void teardown(int load) {
+        /* The references are kept for the next load, so the collector keeps finding them */
+    }
+
+    @Override
+    public void contribute(TaskIteration iteration) {
+        long collections = -collectionsBefore;
+        long collectionTime = -collectionTimeBefore;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections += Math.max(0, bean.getCollectionCount());
+            collectionTime += Math.max(0, bean.getCollectionTime());
+        }
+        processed[CLEANER] += cleaned.getAndSet(0);
+
+        long references = 0;
+        final StringBuilder counts = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            references += created[i];
+            counts.append(String.format("%s%d %s (%d processed)", i == 0 ? "" : ", ", created[i], NAMES[i],
+                    processed[i]));
+        }
+        iteration.addNote(String.format("References: %s, %s; %d collections taking %d ms, %.3f ms per million "
+                        + "references", counts, cleaner == null ? "cleaners emulated with phantom references"
+                        : "java.lang.ref.Cleaner", collections, collectionTime,
+                references == 0 ? 0 : collectionTime * 1e6 / references));
+        for (int i = 0; i < NAMES.length; i++) {
+            created[i] = 0;
+            processed[i] = 0;
+        }
+    }
+
+    /**
+     * Keeps the reference reachable in place of the oldest reference in the ring, and counts the oldest reference if
+     * the collector has cleared it.
+     */
+    private void retain(Reference<?> reference) {
+        final Reference<?> oldest = retained[next];
+        if (oldest instanceof WeakReference && oldest.get() == null) {
+            processed[WEAK]++;
+        } else if (oldest instanceof SoftReference && oldest.get() == null) {
+            processed[SOFT]++;
+        }
+        retained[next] = reference;
+        next = (next + 1) % retained.length;
+    }
+
+    private void registerCleaner(byte[] payload) {
+        if (cleaner == null) {
+            retain(new PhantomReference<Object>(payload, cleanerQueue));
+            return;
+        }
+        try {
+            register.invoke(cleaner, payload, new CleanAction(cleaned));
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to register a payload with the cleaner", e);
+        }
+    }
+
+    /**
+     * Counts the enqueued phantom references, runs the emulated cleaners and expunges the stale map entries.
+     */
+    private void drain(Blackhole blackhole) {
+        while (phantomQueue.poll() != null) {
+            processed[PHANTOM]++;
+        }
+        while (cleanerQueue.poll() != null) {
+            cleaned.incrementAndGet();
+        }
+        /* The size of the map expunges the entries of cleared keys */
+        final int size = weakMap.size();
+        blackhole.consume(size);
+        processed[WEAK_MAP] += weakMapEntries - size - expungedEntries;
+        expungedEntries = weakMapEntries - size;
+    }
+
+    private byte[] newPayload() {
+        return new byte[parameters.payloadSize];
+    }
+
+    /**
+     * The action of a cleaner, which must not refer to the payload it cleans.
+     */
+    private static final class CleanAction implements Runnable {
+
+        private final AtomicLong cleaned;
+
+        CleanAction(AtomicLong cleaned) {
+            this.cleaned = cleaned;
+        }
+
+        @Override
+        public void run() {
+            cleaned.incrementAndGet();
+        }
+    }
+
+    /**
+     * Provides the generator under the name <code>references</code>. The parameters given in the task file are bound
+     * to {@link Parameters}.
+     */
+    public static class Provider implements LoadGeneratorProvider {
+
+        @Override
+        public String getName() {
+            return "references";
+        }
+
+        @Override
+        public Workload create(GeneratorParameters parameters) {
+            return Workload.of(new ReferenceLoadGenerator(parameters.isEmpty() ? new Parameters()
+                    : parameters.bind(Parameters.class)));
+        }
+    }
+
+    /**
+     * The number of references of each kind created per unit of load.
+     */
+    public static class Parameters {
+
+        public int weakPerLoad = 100;
+        public int softPerLoad = 10;
+        public int phantomPerLoad = 10;
+        public int weakMapEntriesPerLoad = 10;
+        public int cleanersPerLoad = 10;
+        /** The size of every payload in bytes. */
+        public int payloadSize = 64;
+        /** The number of the latest references kept reachable, so the collector has to process them. */
+        public int retained = 100000;
+
+        void validate() {
+            if (weakPerLoad < 0 || softPerLoad < 0 || phantomPerLoad < 0 || weakMapEntriesPerLoad < 0
+                    || cleanersPerLoad < 0) {
+                throw new IllegalArgumentException("The number of references cannot be negative");
+            }
+            if (payloadSize < 0) {
+                throw new IllegalArgumentException("The payload size cannot be negative");
+            }
+            if (retained < 1) {
+                throw new IllegalArgumentException("At least 1 reference must be retained");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,26 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import model.TaskIteration;
+
+/**
+ * A load generator that records metrics of its own while the iterations run, such as the latency of work handed to
+ * other threads. The metrics are added to the results after the iterations with a load have completed, outside the
+ * timed window.
+ *
+ * @author jepeders
+ */
+public interface ResultContributor {
+
+    /**
+     * Adds the metrics recorded since the last call to the results of the iterations. In an open loop every worker
+     * contributes to the same iteration, and histograms added under the same name are combined.
+     *
+     * @param iteration The results of the iterations that just completed.
+     */
+    void contribute(TaskIteration iteration);
+
+}
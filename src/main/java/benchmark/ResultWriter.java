@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import java.io.Closeable;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes the results of the benchmark in a dedicated thread, so the benchmark thread does not spend time formatting
+ * histograms or waiting for the disk between two loads. The writes are handed to the thread through a bounded
+ * lock-free {@link HandoffQueue}. If the writer falls behind and the queue is full, the benchmark thread waits until
+ * there is room again.
+ *
+ * @author jepeders
+ */
+public class ResultWriter implements Closeable {
+
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private static final long IDLE_PARK_IN_NANOS = 10000000;
+    private static final long FULL_PARK_IN_NANOS = 100000;
+
+    private final HandoffQueue<Runnable> queue;
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile Throwable failure;
+
+    public ResultWriter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates and starts a writer.
+     *
+     * @param capacity The number of writes that can wait before the benchmark thread is held back.
+     */
+    public ResultWriter(int capacity) {
+        this.queue = new HandoffQueue<Runnable>(capacity);
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "result-writer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Hands a write to the writer thread. Must only be called by one thread.
+     *
+     * @param write The write to perform.
+     * @throws IllegalStateException If the writer is closed or a previous write failed.
+     */
+    public void submit(Runnable write) {
+        if (closed) {
+            throw new IllegalStateException("The writer is closed");
+        }
+        checkFailure();
+        while (!queue.offer(write)) {
+            /* Back-pressure: wait for the writer to catch up */
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(this, FULL_PARK_IN_NANOS);
+            checkFailure();
+        }
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Waits until all submitted writes are done and stops the writer thread.
+     *
+     * @throws IllegalStateException If a write failed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the results to be written", e);
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("Failed to write the results", failure);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable write = queue.poll();
+            if (write == null) {
+                if (!closed) {
+                    LockSupport.parkNanos(this, IDLE_PARK_IN_NANOS);
+                    continue;
+                }
+                /* The last write may have been submitted right before closing */
+                write = queue.poll();
+                if (write == null) {
+                    return;
+                }
+            }
+            try {
+                write.run();
+            } catch (Throwable e) {
+                failure = e;
+                return;
+            }
+        }
+    }
+
+}
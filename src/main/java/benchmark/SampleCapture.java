@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Captures every sample of a load in the order it was recorded, for offline analysis of autocorrelation, periodicity
+ * and other effects the histograms throw away. A sample is a tuple of the start time of the iteration relative to the
+ * start of the load, the deadline delta and the period delta, all in nanoseconds.
+ * <p>
+ * The samples are written to a small number of blocks allocated off the heap before the load starts, so recording a
+ * sample does not allocate anything. Each block holds one column per value. A full block is handed to a background
+ * thread, which appends it to the file and hands the block back. If all blocks are waiting to be written, the benchmark
+ * thread waits for the writer and the wait is counted as a stall.
+ * </p>
+ * <p>
+ * The file starts with the magic number, the format version, the load and the wall-clock start time of the load in
+ * milliseconds. It is followed by the blocks, each with the number of samples in the block and then the timestamp,
+ * deadline and period columns of that many big-endian longs. {@link RawSampleReader} reads the file.
+ * </p>
+ *
+ * @author jepeders
+ */
+public class SampleCapture {
+
+    public static final long MAGIC = 0x4a4d42524157L; /* JMBRAW */
+    public static final int VERSION = 1;
+    public static final int COLUMNS = 3;
+
+    static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+    static final int DEFAULT_BLOCKS = 4;
+
+    private final FileChannel channel;
+    private final int blockSize;
+    private final HandoffQueue<Block> full;
+    private final HandoffQueue<Block> free;
+    private final Writer writer;
+    private final long startInNanos;
+
+    private Block current;
+    private int position;
+    private long samples;
+    private long stalls;
+
+    /**
+     * Opens the file and allocates the blocks.
+     *
+     * @param file         The file to write the samples to.
+     * @param load         The load of the samples.
+     * @param startInNanos The {@link System#nanoTime()} at which the load started.
+     */
+    public SampleCapture(File file, int load, long startInNanos) {
+        this(file, load, startInNanos, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCKS);
+    }
+
+    SampleCapture(File file, int load, long startInNanos, int blockSize, int blocks) {
+        this.blockSize = blockSize;
+        this.startInNanos = startInNanos;
+        this.full = new HandoffQueue<Block>(blocks);
+        this.free = new HandoffQueue<Block>(blocks);
+        try {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            final ByteBuffer header = ByteBuffer.allocate(24);
+            header.putLong(MAGIC).putInt(VERSION).putInt(load).putLong(System.currentTimeMillis()).flip();
+            writeFully(channel, header);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open the sample file " + file, e);
+        }
+        this.current = new Block(blockSize);
+        for (int i = 1; i < blocks; i++) {
+            free.offer(new Block(blockSize));
+        }
+        this.writer = new Writer(file);
+        writer.start();
+    }
+
+    /**
+     * Records a sample in constant time without allocating.
+     *
+     * @param timestampInNanos The {@link System#nanoTime()} at which the iteration started.
+     * @param deadlineInNanos  The deadline delta of the iteration.
+     * @param periodInNanos    The period delta of the iteration or -1 for the first iteration.
+     */
+    public void record(long timestampInNanos, long deadlineInNanos, long periodInNanos) {
+        current.timestamps.put(position, timestampInNanos - startInNanos);
+        current.deadlines.put(position, deadlineInNanos);
+        current.periods.put(position, periodInNanos);
+        samples++;
+        if (++position == blockSize) {
+            handOff();
+        }
+    }
+
+    private void handOff() {
+        current.size = position;
+        /* There is room for every block in the queue, so the offer cannot fail */
+        full.offer(current);
+        position = 0;
+        Block next = free.poll();
+        if (next == null) {
+            stalls++;
+            while ((next = free.poll()) == null) {
+                checkWriter();
+                LockSupport.parkNanos(this, 10000);
+            }
+        }
+        current = next;
+    }
+
+    private void checkWriter() {
+        if (writer.failure != null) {
+            throw new IllegalStateException("Failed to write the samples to " + writer.file, writer.failure);
+        }
+    }
+
+    /**
+     * Writes the remaining samples and closes the file.
+     *
+     * @return A description of the capture.
+     * @throws IllegalStateException If the samples could not be written.
+     */
+    public String close() {
+        if (position > 0) {
+            handOff();
+        }
+        writer.running = false;
+        try {
+            writer.join();
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing the samples", e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to close the sample file " + writer.file, e);
+        }
+        checkWriter();
+        return String.format("Raw samples: %d samples written to %s, the benchmark waited for the writer %d times",
+                samples, writer.file.getName(), stalls);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * A block of samples in one direct buffer, divided into a column per value.
+     */
+    private static final class Block {
+
+        final ByteBuffer buffer;
+        final LongBuffer timestamps;
+        final LongBuffer deadlines;
+        final LongBuffer periods;
+        final ByteBuffer sizeBuffer = ByteBuffer.allocate(4);
+        int size;
+
+        Block(int capacity) {
+            buffer = ByteBuffer.allocateDirect(COLUMNS * capacity * 8).order(ByteOrder.BIG_ENDIAN);
+            timestamps = column(0, capacity);
+            deadlines = column(1, capacity);
+            periods = column(2, capacity);
+        }
+
+        private LongBuffer column(int index, int capacity) {
+            buffer.limit((index + 1) * capacity * 8).position(index * capacity * 8);
+            final LongBuffer column = buffer.slice().asLongBuffer();
+            buffer.clear();
+            return column;
+        }
+
+        /**
+         * Writes the size and the used part of every column.
+         */
+        void writeTo(FileChannel channel, int capacity) throws IOException {
+            sizeBuffer.clear();
+            sizeBuffer.putInt(size).flip();
+            writeFully(channel, sizeBuffer);
+            for (int column = 0; column < COLUMNS; column++) {
+                buffer.limit((column * capacity + size) * 8).position(column * capacity * 8);
+                writeFully(channel, buffer);
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Appends the full blocks to the file and hands them back.
+     */
+    private final class Writer extends Thread {
+
+        final File file;
+        volatile boolean running = true;
+        volatile Throwable failure;
+
+        Writer(File file) {
+            super("sample-writer");
+            setDaemon(true);
+            this.file = file;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    /* Read the flag before polling, so the last block is not missed when stopping */
+                    final boolean stopping = !running;
+                    final Block block = full.poll();
+                    if (block != null) {
+                        block.writeTo(channel, blockSize);
+                        free.offer(block);
+                    } else if (stopping) {
+                        return;
+                    } else {
+                        LockSupport.parkNanos(this, 100000);
+                    }
+                }
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,411 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import model.TaskIteration;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A report on how the latency scales with the load over all the load steps of a run. For the 50th, 99th and 99.9th
+ * percentile and the maximum of the deadline and response (hiccup) histograms, the report fits a line to the values
+ * against the load and finds the knee: the first load where the latency grows faster than the line predicted from
+ * the loads before it. For the deadline percentiles the report also estimates the last load which meets the deadline.
+ * <p>
+ * The report is written as a self-contained HTML page with inline SVG charts and as a CSV file with one row per load.
+ * </p>
+ *
+ * @author jepeders
+ */
+public class ScalingReport {
+
+    public static final String HTML_OUTPUT_NAME = "report.html";
+    public static final String CSV_OUTPUT_NAME = "report.csv";
+
+    /** The percentiles to report. 100 is the maximum value. */
+    public static final double[] PERCENTILES = {50, 99, 99.9, 100};
+    static final String[] PERCENTILE_NAMES = {"p50", "p99", "p99.9", "max"};
+
+    /* A latency more than 50% above the linear prediction is past the knee */
+    private static final double KNEE_TOLERANCE = 0.5;
+    private static final int MIN_FIT_POINTS = 2;
+
+    private static final DecimalFormat NUMBER_FORMAT = new DecimalFormat("0.##",
+            DecimalFormatSymbols.getInstance(Locale.ROOT));
+
+    private static final String[] COLOURS = {"#1f77b4", "#2ca02c", "#ff7f0e", "#d62728"};
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 360;
+    private static final int MARGIN = 60;
+
+    private final String title;
+    private final long deadlineInNanos;
+    private final List<Integer> loads = new ArrayList<Integer>();
+    private final List<long[]> deadlineValues = new ArrayList<long[]>();
+    private final List<long[]> hiccupValues = new ArrayList<long[]>();
+
+    /**
+     * Creates an empty report.
+     *
+     * @param title           The title of the report.
+     * @param deadlineInNanos The deadline of the task or 0 if the task has no deadline.
+     */
+    public ScalingReport(String title, long deadlineInNanos) {
+        this.title = title;
+        this.deadlineInNanos = deadlineInNanos;
+    }
+
+    /**
+     * Adds the results of a load step to the report. The steps must be added in order of increasing load.
+     *
+     * @param iteration The results of the load step.
+     */
+    public void add(TaskIteration iteration) {
+        loads.add(iteration.load);
+        deadlineValues.add(percentiles(iteration.getDeadlineHistogram()));
+        hiccupValues.add(percentiles(iteration.getHiccupHistogram()));
+    }
+
+    /**
+     * @return The series of the deadline percentiles, in the order of {@link #PERCENTILES}.
+     */
+    public List<Series> getDeadlineSeries() {
+        return series("deadline", deadlineValues, deadlineInNanos);
+    }
+
+    /**
+     * @return The series of the response percentiles, in the order of {@link #PERCENTILES}.
+     */
+    public List<Series> getHiccupSeries() {
+        return series("response", hiccupValues, 0);
+    }
+
+    /**
+     * Writes the report as comma separated values, with one row per load and the values in nanoseconds.
+     */
+    public void writeCsv(PrintStream output) {
+        final StringBuilder header = new StringBuilder("load");
+        for (String histogram : new String[] {"deadline", "response"}) {
+            for (String percentile : PERCENTILE_NAMES) {
+                header.append(',').append(histogram).append('_').append(percentile);
+            }
+        }
+        output.println(header);
+        for (int i = 0; i < loads.size(); i++) {
+            final StringBuilder row = new StringBuilder().append(loads.get(i));
+            for (long value : deadlineValues.get(i)) {
+                row.append(',').append(value);
+            }
+            for (long value : hiccupValues.get(i)) {
+                row.append(',').append(value);
+            }
+            output.println(row);
+        }
+    }
+
+    /**
+     * Writes the report as an HTML page. The page has no external dependencies.
+     */
+    public void writeHtml(PrintStream output) {
+        final List<Series> deadlineSeries = getDeadlineSeries();
+        final List<Series> hiccupSeries = getHiccupSeries();
+
+        output.println("<!DOCTYPE html>");
+        output.println("<html><head><meta charset=\"utf-8\"><title>" + escape(title) + "</title>");
+        output.println("<style>body{font-family:sans-serif;margin:2em}table{border-collapse:collapse;margin:1em 0}"
+                + "td,th{border:1px solid #ccc;padding:4px 8px;text-align:right}</style>");
+        output.println("</head><body>");
+        output.println("<h1>" + escape(title) + "</h1>");
+        output.println("<p>Deadline: " + (deadlineInNanos > 0 ? formatNanos(deadlineInNanos) : "none") + "</p>");
+
+        output.println("<h2>Deadline</h2>");
+        writeChart(output, deadlineSeries, deadlineInNanos);
+        writeFitTable(output, deadlineSeries, deadlineInNanos > 0);
+        output.println("<h2>Response</h2>");
+        writeChart(output, hiccupSeries, 0);
+        writeFitTable(output, hiccupSeries, false);
+
+        output.println("<h2>Values</h2>");
+        output.println("<table><tr><th>Load</th>");
+        for (Series series : deadlineSeries) {
+            output.print("<th>" + series.name + "</th>");
+        }
+        for (Series series : hiccupSeries) {
+            output.print("<th>" + series.name + "</th>");
+        }
+        output.println("</tr>");
+        for (int i = 0; i < loads.size(); i++) {
+            output.print("<tr><td>" + loads.get(i) + "</td>");
+            for (long value : deadlineValues.get(i)) {
+                output.print("<td>" + formatNanos(value) + "</td>");
+            }
+            for (long value : hiccupValues.get(i)) {
+                output.print("<td>" + formatNanos(value) + "</td>");
+            }
+            output.println("</tr>");
+        }
+        output.println("</table>");
+        output.println("</body></html>");
+    }
+
+    private void writeFitTable(PrintStream output, List<Series> series, boolean withDeadline) {
+        output.println("<table><tr><th>Series</th><th>Slope per load</th><th>Intercept</th>"
+                + "<th>Linear up to load</th><th>Knee at load</th>"
+                + (withDeadline ? "<th>Last load meeting the deadline</th>" : "") + "</tr>");
+        for (Series s : series) {
+            output.print(String.format("<tr><td>%s</td><td>%s</td><td>%s</td><td>%s</td><td>%s</td>", s.name,
+                    formatNanos(s.slope), formatNanos(s.intercept), s.getLastLinearLoad(),
+                    s.kneeIndex < 0 ? "none" : Integer.toString(s.getKneeLoad())));
+            if (withDeadline) {
+                output.print("<td>" + (Double.isNaN(s.deadlineLoad) ? "none"
+                        : String.format(Locale.ROOT, "%.0f", s.deadlineLoad)) + "</td>");
+            }
+            output.println("</tr>");
+        }
+        output.println("</table>");
+    }
+
+    /**
+     * Plots the series with the load on a base 2 logarithmic x-axis and the latency on a base 10 logarithmic y-axis.
+     */
+    private void writeChart(PrintStream output, List<Series> series, long deadline) {
+        if (loads.isEmpty()) {
+            return;
+        }
+        double minValue = deadline > 0 ? deadline : Double.MAX_VALUE;
+        double maxValue = deadline > 0 ? deadline : 1;
+        for (Series s : series) {
+            for (long value : s.values) {
+                minValue = Math.min(minValue, Math.max(1, value));
+                maxValue = Math.max(maxValue, value);
+            }
+        }
+        final double yMin = Math.floor(Math.log10(minValue));
+        final double yMax = Math.max(yMin + 1, Math.ceil(Math.log10(maxValue)));
+        final double xMin = log2(loads.get(0));
+        final double xMax = Math.max(xMin + 1, log2(loads.get(loads.size() - 1)));
+        final Axis axis = new Axis(xMin, xMax, yMin, yMax);
+
+        output.println(String.format("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" height=\"%d\" "
+                + "font-size=\"11\">", WIDTH, HEIGHT));
+        output.println(String.format("<rect x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\" fill=\"none\" "
+                + "stroke=\"#999\"/>", MARGIN, MARGIN / 2, WIDTH - 2 * MARGIN, HEIGHT - 3 * MARGIN / 2));
+
+        /* Axis labels */
+        for (int load : loads) {
+            final double x = axis.x(load);
+            output.println(String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"%d\" text-anchor=\"middle\">%d</text>",
+                    x, HEIGHT - MARGIN + 15, load));
+        }
+        output.println(String.format("<text x=\"%d\" y=\"%d\" text-anchor=\"middle\">load</text>", WIDTH / 2,
+                HEIGHT - MARGIN + 35));
+        for (int exponent = (int) yMin; exponent <= (int) yMax; exponent++) {
+            final double y = axis.y(Math.pow(10, exponent));
+            output.println(String.format(Locale.ROOT, "<line x1=\"%d\" y1=\"%.1f\" x2=\"%d\" y2=\"%.1f\" "
+                    + "stroke=\"#eee\"/>", MARGIN, y, WIDTH - MARGIN, y));
+            output.println(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%.1f\" text-anchor=\"end\">%s</text>",
+                    MARGIN - 5, y + 4, formatNanos(Math.pow(10, exponent))));
+        }
+
+        if (deadline > 0) {
+            final double y = axis.y(deadline);
+            output.println(String.format(Locale.ROOT, "<line x1=\"%d\" y1=\"%.1f\" x2=\"%d\" y2=\"%.1f\" "
+                    + "stroke=\"red\" stroke-dasharray=\"6,4\"/>", MARGIN, y, WIDTH - MARGIN, y));
+        }
+
+        for (int i = 0; i < series.size(); i++) {
+            final Series s = series.get(i);
+            final String colour = COLOURS[i % COLOURS.length];
+            final StringBuilder points = new StringBuilder();
+            for (int j = 0; j < s.values.length; j++) {
+                points.append(String.format(Locale.ROOT, "%.1f,%.1f ", axis.x(loads.get(j)),
+                        axis.y(Math.max(1, s.values[j]))));
+            }
+            output.println(String.format("<polyline points=\"%s\" fill=\"none\" stroke=\"%s\" stroke-width=\"2\"/>",
+                    points.toString().trim(), colour));
+            if (s.kneeIndex >= 0) {
+                output.println(String.format(Locale.ROOT, "<circle cx=\"%.1f\" cy=\"%.1f\" r=\"5\" fill=\"none\" "
+                                + "stroke=\"%s\"><title>Knee of %s</title></circle>", axis.x(s.getKneeLoad()),
+                        axis.y(Math.max(1, s.values[s.kneeIndex])), colour, s.name));
+            }
+            /* The legend is drawn in the top left corner of the plot */
+            output.println(String.format("<text x=\"%d\" y=\"%d\" fill=\"%s\">%s</text>", MARGIN + 5,
+                    MARGIN / 2 + 15 * (i + 1), colour, s.name));
+        }
+        output.println("</svg>");
+    }
+
+    private List<Series> series(String histogram, List<long[]> values, long deadline) {
+        final List<Series> series = new ArrayList<Series>();
+        for (int p = 0; p < PERCENTILES.length; p++) {
+            final long[] column = new long[values.size()];
+            for (int i = 0; i < column.length; i++) {
+                column[i] = values.get(i)[p];
+            }
+            series.add(new Series(histogram + " " + PERCENTILE_NAMES[p], loads, column, deadline));
+        }
+        return series;
+    }
+
+    /**
+     * @return The values of the histogram at the {@link #PERCENTILES}.
+     */
+    static long[] percentiles(Histogram histogram) {
+        final long[] values = new long[PERCENTILES.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = PERCENTILES[i] >= 100 ? histogram.getMaxValue()
+                    : histogram.getValueAtPercentile(PERCENTILES[i]);
+        }
+        return values;
+    }
+
+    private static double log2(double value) {
+        return Math.log(value) / Math.log(2);
+    }
+
+    /**
+     * Formats a duration for HTML with up to three significant digits in the largest fitting unit.
+     */
+    static String formatNanos(double nanos) {
+        final double magnitude = Math.abs(nanos);
+        if (magnitude >= 1e9) {
+            return NUMBER_FORMAT.format(nanos / 1e9) + "s";
+        } else if (magnitude >= 1e6) {
+            return NUMBER_FORMAT.format(nanos / 1e6) + "ms";
+        } else if (magnitude >= 1e3) {
+            return NUMBER_FORMAT.format(nanos / 1e3) + "&#181;s";
+        }
+        return NUMBER_FORMAT.format(nanos) + "ns";
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    /**
+     * Maps loads and latencies to the coordinates of a chart.
+     */
+    private static final class Axis {
+        private final double xMin;
+        private final double xMax;
+        private final double yMin;
+        private final double yMax;
+
+        Axis(double xMin, double xMax, double yMin, double yMax) {
+            this.xMin = xMin;
+            this.xMax = xMax;
+            this.yMin = yMin;
+            this.yMax = yMax;
+        }
+
+        double x(double load) {
+            return MARGIN + (log2(Math.max(1, load)) - xMin) / (xMax - xMin) * (WIDTH - 2 * MARGIN);
+        }
+
+        double y(double nanos) {
+            return HEIGHT - MARGIN - (Math.log10(nanos) - yMin) / (yMax - yMin) * (HEIGHT - 3 * MARGIN / 2);
+        }
+    }
+
+    /**
+     * The values of one percentile against the load, with a least-squares line fitted to the values before the knee.
+     */
+    public static final class Series {
+
+        public final String name;
+        public final long[] values;
+        /** The slope of the fitted line in nanoseconds per unit of load. */
+        public final double slope;
+        /** The intercept of the fitted line in nanoseconds. */
+        public final double intercept;
+        /** The index of the first load past the knee or -1 if the latency scales linearly with all loads. */
+        public final int kneeIndex;
+        /** The estimated largest load which meets the deadline or NaN if there is no deadline or no such load. */
+        public final double deadlineLoad;
+
+        private final List<Integer> loads;
+
+        Series(String name, List<Integer> loads, long[] values, long deadline) {
+            this.name = name;
+            this.loads = loads;
+            this.values = values;
+
+            /* Grow the fit until a value lies above the prediction of the values before it */
+            int knee = -1;
+            for (int i = MIN_FIT_POINTS; i < values.length && knee < 0; i++) {
+                final double[] fit = fit(loads, values, i);
+                final double predicted = fit[0] + fit[1] * loads.get(i);
+                if (values[i] > (1 + KNEE_TOLERANCE) * Math.max(predicted, 1)) {
+                    knee = i;
+                }
+            }
+            final double[] fit = fit(loads, values, knee < 0 ? values.length : knee);
+            this.intercept = fit[0];
+            this.slope = fit[1];
+            this.kneeIndex = knee;
+            this.deadlineLoad = deadline > 0 ? crossing(loads, values, deadline) : Double.NaN;
+        }
+
+        public int getKneeLoad() {
+            return kneeIndex < 0 ? -1 : loads.get(kneeIndex);
+        }
+
+        public int getLastLinearLoad() {
+            return loads.isEmpty() ? -1 : loads.get(kneeIndex < 0 ? loads.size() - 1 : kneeIndex - 1);
+        }
+
+        /**
+         * Fits a line to the first values with the least squares method.
+         *
+         * @return The intercept and the slope.
+         */
+        private static double[] fit(List<Integer> loads, long[] values, int count) {
+            if (count == 0) {
+                return new double[] {0, 0};
+            }
+            double sumX = 0;
+            double sumY = 0;
+            for (int i = 0; i < count; i++) {
+                sumX += loads.get(i);
+                sumY += values[i];
+            }
+            final double meanX = sumX / count;
+            final double meanY = sumY / count;
+            double covariance = 0;
+            double variance = 0;
+            for (int i = 0; i < count; i++) {
+                covariance += (loads.get(i) - meanX) * (values[i] - meanY);
+                variance += (loads.get(i) - meanX) * (loads.get(i) - meanX);
+            }
+            final double slope = variance == 0 ? 0 : covariance / variance;
+            return new double[] {meanY - slope * meanX, slope};
+        }
+
+        /**
+         * Interpolates linearly between the last load meeting the deadline and the load after it.
+         */
+        private static double crossing(List<Integer> loads, long[] values, long deadline) {
+            int last = values.length - 1;
+            while (last >= 0 && values[last] > deadline) {
+                last--;
+            }
+            if (last < 0) {
+                return Double.NaN;
+            } else if (last == values.length - 1) {
+                return loads.get(last);
+            }
+            final double fraction = (double) (deadline - values[last]) / (values[last + 1] - values[last]);
+            return loads.get(last) + fraction * (loads.get(last + 1) - loads.get(last));
+        }
+    }
+
+}
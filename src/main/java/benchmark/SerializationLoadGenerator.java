@@ -0,0 +1,437 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import model.TaskIteration;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedOutputStream;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A load generator that encodes and decodes messages with Jackson, the way a service spends its time on the wire
+ * format. Every call serialises <code>load</code> messages and deserialises them again. The messages look like the
+ * acquisitions of a device: a header, a map of tags, an array of samples and a list of readings. They are built when
+ * the generator is created, so the allocations of a call are the ones made by the serialisation.
+ * <p>
+ * The parameters choose the style of the serialisation:
+ * </p>
+ * <ul>
+ * <li><code>format</code>: <code>json</code> or <code>yaml</code> through an {@link ObjectMapper}, or
+ * <code>streaming</code> through the {@link JsonGenerator} and {@link JsonParser} of the streaming API.</li>
+ * <li><code>mapper</code>: <code>reused</code> mappers, writers and readers, or <code>fresh</code> ones created for
+ * every message. For the streaming format the {@link JsonFactory} is reused or created.</li>
+ * <li><code>buffers</code>: <code>pooled</code> buffers reused for every message, or <code>fresh</code> buffers
+ * allocated for every message.</li>
+ * <li><code>target</code>: <code>bytes</code> to write to a byte array, or <code>heap</code> or <code>direct</code> to
+ * write to a heap or direct {@link ByteBuffer}.</li>
+ * </ul>
+ *
+ * @author jepeders
+ */
+public class SerializationLoadGenerator implements SinkLoadGenerator, ResultContributor {
+
+    public static final String JSON = "json";
+    public static final String YAML = "yaml";
+    public static final String STREAMING = "streaming";
+    public static final String REUSED = "reused";
+    public static final String FRESH = "fresh";
+    public static final String POOLED = "pooled";
+    public static final String BYTES = "bytes";
+    public static final String HEAP = "heap";
+    public static final String DIRECT = "direct";
+
+    private static final long SEED = 1843710252; /* Random number */
+
+    private final Parameters parameters;
+    private final Message[] messages;
+    private final JsonFactory factory;
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+    private final int bufferCapacity;
+
+    /* The pooled buffers, one of which is used depending on the target */
+    private final PooledOutput pooledOutput;
+    private final ByteBuffer pooledBuffer;
+    private final OutputStream pooledBufferOutput;
+    private final InputStream pooledBufferInput;
+
+    private int next;
+    private long encodedMessages;
+    private long encodedBytes;
+
+    public SerializationLoadGenerator() {
+        this(new Parameters());
+    }
+
+    /**
+     * Creates a generator with the given parameters and builds the messages.
+     *
+     * @param parameters The parameters of the serialisation.
+     * @throws IllegalArgumentException If the parameters are not valid.
+     */
+    public SerializationLoadGenerator(Parameters parameters) {
+        parameters.validate();
+        this.parameters = parameters;
+        this.messages = createMessages(parameters);
+        this.factory = newFactory();
+        final ObjectMapper mapper = new ObjectMapper(factory);
+        this.writer = mapper.writerFor(Message.class);
+        this.reader = mapper.readerFor(Message.class);
+
+        /* Make room for twice the largest message, so the byte buffers never overflow */
+        int largest = 0;
+        try {
+            for (Message message : messages) {
+                final PooledOutput output = new PooledOutput();
+                encode(message, output, factory, writer);
+                largest = Math.max(largest, output.size());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialise a message", e);
+        }
+        this.bufferCapacity = 2 * largest;
+        this.pooledOutput = new PooledOutput();
+        this.pooledBuffer = allocateBuffer();
+        this.pooledBufferOutput = pooledBuffer == null ? null : new ByteBufferBackedOutputStream(pooledBuffer);
+        this.pooledBufferInput = pooledBuffer == null ? null : new ByteBufferBackedInputStream(pooledBuffer);
+    }
+
+    /**
+     * Serialises <code>load</code> messages and deserialises them again.
+     */
+    @Override
+    public void generateLoad(int load, Blackhole blackhole) {
+        try {
+            for (int i = 0; i < load; i++) {
+                final Message message = messages[next];
+                next = (next + 1) % messages.length;
+                blackhole.consume(roundTrip(message));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialise a message", e);
+        }
+    }
+
+    @Override
+    public void contribute(TaskIteration iteration) {
+        final double bytesPerMessage = encodedMessages == 0 ? 0 : (double) encodedBytes / encodedMessages;
+        iteration.addNote(String.format("Serialization: %s with %s mappers and %s %s buffers, %d messages of %.0f "
+                        + "bytes on average", parameters.format, parameters.mapper, parameters.buffers,
+                parameters.target, encodedMessages, bytesPerMessage));
+        encodedMessages = 0;
+        encodedBytes = 0;
+    }
+
+    private Message roundTrip(Message message) throws IOException {
+        final boolean fresh = FRESH.equals(parameters.mapper);
+        final JsonFactory codecFactory = fresh ? newFactory() : factory;
+        final ObjectMapper mapper = fresh && !STREAMING.equals(parameters.format) ? new ObjectMapper(codecFactory)
+                : null;
+        final ObjectWriter codecWriter = mapper == null ? writer : mapper.writerFor(Message.class);
+        final ObjectReader codecReader = mapper == null ? reader : mapper.readerFor(Message.class);
+        final boolean pooled = POOLED.equals(parameters.buffers);
+
+        if (BYTES.equals(parameters.target)) {
+            final PooledOutput output = pooled ? pooledOutput : new PooledOutput();
+            output.reset();
+            encode(message, output, codecFactory, codecWriter);
+            count(output.size());
+            if (STREAMING.equals(parameters.format)) {
+                return readMessage(codecFactory.createParser(output.array(), 0, output.size()));
+            }
+            return codecReader.readValue(output.array(), 0, output.size());
+        }
+
+        final ByteBuffer buffer = pooled ? pooledBuffer : allocateBuffer();
+        buffer.clear();
+        encode(message, pooled ? pooledBufferOutput : new ByteBufferBackedOutputStream(buffer), codecFactory,
+                codecWriter);
+        buffer.flip();
+        count(buffer.remaining());
+        final InputStream input = pooled ? pooledBufferInput : new ByteBufferBackedInputStream(buffer);
+        if (STREAMING.equals(parameters.format)) {
+            return readMessage(codecFactory.createParser(input));
+        }
+        return codecReader.readValue(input);
+    }
+
+    private void count(int bytes) {
+        encodedMessages++;
+        encodedBytes += bytes;
+    }
+
+    private void encode(Message message, OutputStream output, JsonFactory codecFactory, ObjectWriter codecWriter)
+            throws IOException {
+        if (STREAMING.equals(parameters.format)) {
+            final JsonGenerator generator = codecFactory.createGenerator(output);
+            try {
+                writeMessage(message, generator);
+            } finally {
+                generator.close();
+            }
+        } else {
+            codecWriter.writeValue(output, message);
+        }
+    }
+
+    private JsonFactory newFactory() {
+        return YAML.equals(parameters.format) ? new YAMLFactory() : new JsonFactory();
+    }
+
+    private ByteBuffer allocateBuffer() {
+        if (HEAP.equals(parameters.target)) {
+            return ByteBuffer.allocate(bufferCapacity);
+        }
+        return DIRECT.equals(parameters.target) ? ByteBuffer.allocateDirect(bufferCapacity) : null;
+    }
+
+    private static void writeMessage(Message message, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", message.id);
+        generator.writeNumberField("timestamp", message.timestamp);
+        generator.writeStringField("device", message.device);
+        generator.writeStringField("property", message.property);
+        generator.writeNumberField("cycle", message.cycle);
+        generator.writeObjectFieldStart("tags");
+        for (Map.Entry<String, String> tag : message.tags.entrySet()) {
+            generator.writeStringField(tag.getKey(), tag.getValue());
+        }
+        generator.writeEndObject();
+        generator.writeFieldName("samples");
+        generator.writeArray(message.samples, 0, message.samples.length);
+        generator.writeArrayFieldStart("readings");
+        for (Reading reading : message.readings) {
+            generator.writeStartObject();
+            generator.writeStringField("name", reading.name);
+            generator.writeNumberField("value", reading.value);
+            generator.writeStringField("unit", reading.unit);
+            generator.writeBooleanField("valid", reading.valid);
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private static Message readMessage(JsonParser parser) throws IOException {
+        try {
+            final Message message = new Message();
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("id".equals(field)) {
+                    message.id = parser.getLongValue();
+                } else if ("timestamp".equals(field)) {
+                    message.timestamp = parser.getLongValue();
+                } else if ("device".equals(field)) {
+                    message.device = parser.getText();
+                } else if ("property".equals(field)) {
+                    message.property = parser.getText();
+                } else if ("cycle".equals(field)) {
+                    message.cycle = parser.getIntValue();
+                } else if ("tags".equals(field)) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        final String key = parser.getCurrentName();
+                        message.tags.put(key, parser.nextTextValue());
+                    }
+                } else if ("samples".equals(field)) {
+                    message.samples = readSamples(parser);
+                } else if ("readings".equals(field)) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        message.readings.add(readReading(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return message;
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static double[] readSamples(JsonParser parser) throws IOException {
+        double[] samples = new double[16];
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (size == samples.length) {
+                samples = Arrays.copyOf(samples, 2 * size);
+            }
+            samples[size++] = parser.getDoubleValue();
+        }
+        return Arrays.copyOf(samples, size);
+    }
+
+    private static Reading readReading(JsonParser parser) throws IOException {
+        final Reading reading = new Reading();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("name".equals(field)) {
+                reading.name = parser.getText();
+            } else if ("value".equals(field)) {
+                reading.value = parser.getDoubleValue();
+            } else if ("unit".equals(field)) {
+                reading.unit = parser.getText();
+            } else if ("valid".equals(field)) {
+                reading.valid = parser.getBooleanValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return reading;
+    }
+
+    private static void expect(JsonToken token, JsonToken expected) throws IOException {
+        if (token != expected) {
+            throw new IOException(String.format("Expected %s but found %s", expected, token));
+        }
+    }
+
+    private static Message[] createMessages(Parameters parameters) {
+        final Random random = new Random(SEED);
+        final String[] units = { "A", "V", "T", "K", "Pa" };
+        final Message[] messages = new Message[parameters.messages];
+        for (int i = 0; i < messages.length; i++) {
+            final Message message = new Message();
+            message.id = i;
+            message.timestamp = 1450000000000L + random.nextInt(1000000);
+            message.device = "DEVICE.RING" + random.nextInt(8) + ".MAGNET" + random.nextInt(1000);
+            message.property = random.nextBoolean() ? "Acquisition" : "Setting";
+            message.cycle = random.nextInt(64);
+            for (int tag = 0; tag < parameters.tagsPerMessage; tag++) {
+                message.tags.put("tag" + tag, Long.toHexString(random.nextLong()));
+            }
+            message.samples = new double[parameters.samplesPerMessage];
+            for (int sample = 0; sample < message.samples.length; sample++) {
+                message.samples[sample] = random.nextGaussian();
+            }
+            for (int reading = 0; reading < parameters.readingsPerMessage; reading++) {
+                final Reading value = new Reading();
+                value.name = "channel" + reading;
+                value.value = random.nextDouble() * 1000;
+                value.unit = units[random.nextInt(units.length)];
+                value.valid = random.nextInt(100) > 0;
+                message.readings.add(value);
+            }
+            messages[i] = message;
+        }
+        return messages;
+    }
+
+    /**
+     * A byte array output stream that gives access to its buffer, so the bytes can be read without copying them.
+     */
+    private static final class PooledOutput extends ByteArrayOutputStream {
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    /**
+     * A message as sent by a device.
+     */
+    public static class Message {
+        public long id;
+        public long timestamp;
+        public String device;
+        public String property;
+        public int cycle;
+        public Map<String, String> tags = new LinkedHashMap<String, String>();
+        public double[] samples;
+        public List<Reading> readings = new ArrayList<Reading>();
+    }
+
+    /**
+     * A single value of a message.
+     */
+    public static class Reading {
+        public String name;
+        public double value;
+        public String unit;
+        public boolean valid;
+    }
+
+    /**
+     * Provides the generator under the name <code>serialization</code>. The parameters given in the task file are
+     * bound to {@link Parameters}.
+     */
+    public static class Provider implements LoadGeneratorProvider {
+
+        @Override
+        public String getName() {
+            return "serialization";
+        }
+
+        @Override
+        public Workload create(GeneratorParameters parameters) {
+            return Workload.of(new SerializationLoadGenerator(parameters.isEmpty() ? new Parameters()
+                    : parameters.bind(Parameters.class)));
+        }
+    }
+
+    /**
+     * The parameters of the serialisation.
+     */
+    public static class Parameters {
+
+        /** The wire format: json, yaml or streaming (JSON through the streaming API). */
+        public String format = JSON;
+        /** Whether the mappers, or the factory when streaming, are reused or created for every message. */
+        public String mapper = REUSED;
+        /** Whether the buffers are pooled or allocated for every message. */
+        public String buffers = POOLED;
+        /** What the messages are written to: bytes, heap or direct. */
+        public String target = BYTES;
+        /** The number of distinct messages, which are sent in turn. */
+        public int messages = 64;
+        public int tagsPerMessage = 4;
+        public int samplesPerMessage = 32;
+        public int readingsPerMessage = 8;
+
+        void validate() {
+            if (!JSON.equals(format) && !YAML.equals(format) && !STREAMING.equals(format)) {
+                throw new IllegalArgumentException("Unknown format " + format);
+            }
+            if (!REUSED.equals(mapper) && !FRESH.equals(mapper)) {
+                throw new IllegalArgumentException("The mapper must be reused or fresh, but was " + mapper);
+            }
+            if (!POOLED.equals(buffers) && !FRESH.equals(buffers)) {
+                throw new IllegalArgumentException("The buffers must be pooled or fresh, but were " + buffers);
+            }
+            if (!BYTES.equals(target) && !HEAP.equals(target) && !DIRECT.equals(target)) {
+                throw new IllegalArgumentException("Unknown target " + target);
+            }
+            if (messages < 1) {
+                throw new IllegalArgumentException("At least 1 message is needed");
+            }
+            if (tagsPerMessage < 0 || samplesPerMessage < 0 || readingsPerMessage < 0) {
+                throw new IllegalArgumentException("The sizes of the messages cannot be negative");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+/**
+ * A load generator that hands the values it computes to a {@link Blackhole} instead of returning them. Unlike
+ * {@link LoadGenerator} it does not have to collect the generated objects in a list, so the only allocations are the
+ * ones made by the load itself.
+ *
+ * @author jepeders
+ */
+public interface SinkLoadGenerator {
+
+    /**
+     * Generates a certain amount of load. Incremented by a factor of two each time (1, 2, 4, 8 ...).
+     *
+     * @param load      The amount of load to generate.
+     * @param blackhole The sink to consume the generated values, to avoid just-in-time compilation optimisation.
+     */
+    void generateLoad(int load, Blackhole blackhole);
+
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import model.Sla;
+import model.SlaVerdict;
+import model.Task;
+
+/**
+ * Checks the {@link Sla} of a task while a load runs. At every check the rules are checked against the cumulative
+ * {@link LiveHistograms} of the load. The checks are made by the benchmark thread between two periods, outside the
+ * timed iterations. The confidence of the SLA is split between all the checks the runtime allows, so the chance of
+ * stopping a load that meets the SLA stays below <code>1 - confidence</code> however often the rules are checked.
+ *
+ * @author jepeders
+ */
+class SlaMonitor {
+
+    private final Task task;
+    private final Sla sla;
+    private final LiveHistograms histograms;
+    private final long startInNanos;
+    private final long checkIntervalInNanos;
+    private final long checks;
+    private long nextCheckInNanos;
+    private SlaVerdict violation;
+
+    /**
+     * @param runtimeInNanos The longest time the load runs.
+     */
+    SlaMonitor(Task task, LiveHistograms histograms, long startInNanos, long runtimeInNanos) {
+        this.task = task;
+        this.sla = task.getSla();
+        this.histograms = histograms;
+        this.startInNanos = startInNanos;
+        this.checkIntervalInNanos = MILLISECONDS.toNanos(sla.checkIntervalInMs);
+        this.nextCheckInNanos = startInNanos + checkIntervalInNanos;
+        /* The checks during the load and the final verdict */
+        this.checks = runtimeInNanos / checkIntervalInNanos + 1;
+    }
+
+    /**
+     * Checks the rules if the check interval has passed.
+     *
+     * @param load        The load of the iterations.
+     * @param timeInNanos The current time.
+     * @return True if the load should stop, because a violation is certain.
+     */
+    boolean shouldStop(int load, long timeInNanos) {
+        if (timeInNanos < nextCheckInNanos) {
+            return false;
+        }
+        nextCheckInNanos = timeInNanos + checkIntervalInNanos;
+        histograms.update();
+        final SlaVerdict verdict = check(load);
+        if (violation == null && verdict.isViolationCertain()) {
+            verdict.elapsedInNanos = timeInNanos - startInNanos;
+            violation = verdict;
+        }
+        return violation != null && sla.stopOnViolation;
+    }
+
+    /**
+     * Gives the verdict on all the values of the load. Must be called after the histograms are finished.
+     */
+    SlaVerdict finish(int load) {
+        final SlaVerdict verdict = check(load);
+        verdict.elapsedInNanos = System.nanoTime() - startInNanos;
+        verdict.stoppedEarly = violation != null && sla.stopOnViolation;
+        return verdict;
+    }
+
+    private SlaVerdict check(int load) {
+        return SlaVerdict.of(sla, task.deadlineInNanos, load, histograms.getDeadlineHistogram(),
+                histograms.getMeasuredDeadlineHistogram(), histograms.getPeriodHistogram(),
+                histograms.getResponseHistogram(), checks);
+    }
+
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded queue between two stages of a pipeline, with one producer and one consumer thread. The queue is either a
+ * {@link ArrayBlockingQueue} guarded by a lock, the lock-free {@link HandoffQueue} ring or a single-producer
+ * single-consumer array, where each side caches the position of the other side to avoid reading it on every call. The
+ * lock-free queues spin and then yield while they wait.
+ *
+ * @param <T> The type of the objects passed between the stages.
+ * @author jepeders
+ */
+abstract class StageQueue<T> {
+
+    public static final String BLOCKING = "blocking";
+    public static final String RING = "ring";
+    public static final String SPSC = "spsc";
+
+    private static final int SPINS = 100;
+
+    /**
+     * Creates a queue of the given type.
+     *
+     * @param type     The type of the queue: blocking, ring or spsc.
+     * @param capacity The number of objects the queue can hold.
+     * @return An empty queue.
+     * @throws IllegalArgumentException If the type is unknown.
+     */
+    static <T> StageQueue<T> create(String type, int capacity) {
+        if (BLOCKING.equals(type)) {
+            return new Blocking<T>(capacity);
+        } else if (RING.equals(type)) {
+            return new Ring<T>(capacity);
+        } else if (SPSC.equals(type)) {
+            return new SpscArray<T>(capacity);
+        }
+        throw new IllegalArgumentException("Unknown queue type " + type);
+    }
+
+    static boolean isKnown(String type) {
+        return BLOCKING.equals(type) || RING.equals(type) || SPSC.equals(type);
+    }
+
+    /**
+     * Adds an object to the queue, waiting for room if the queue is full.
+     */
+    abstract void put(T item) throws InterruptedException;
+
+    /**
+     * Removes the oldest object from the queue, waiting for one to arrive if the queue is empty.
+     */
+    abstract T take() throws InterruptedException;
+
+    /**
+     * Spins for the first attempts and yields the processor after that.
+     */
+    static void backOff(int attempt) throws InterruptedException {
+        if (attempt > SPINS) {
+            Thread.yield();
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private static final class Blocking<T> extends StageQueue<T> {
+
+        private final ArrayBlockingQueue<T> queue;
+
+        Blocking(int capacity) {
+            this.queue = new ArrayBlockingQueue<T>(capacity);
+        }
+
+        @Override
+        void put(T item) throws InterruptedException {
+            queue.put(item);
+        }
+
+        @Override
+        T take() throws InterruptedException {
+            return queue.take();
+        }
+    }
+
+    private static final class Ring<T> extends StageQueue<T> {
+
+        private final HandoffQueue<T> queue;
+
+        Ring(int capacity) {
+            this.queue = new HandoffQueue<T>(capacity);
+        }
+
+        @Override
+        void put(T item) throws InterruptedException {
+            for (int attempt = 0; !queue.offer(item); attempt++) {
+                backOff(attempt);
+            }
+        }
+
+        @Override
+        T take() throws InterruptedException {
+            T item;
+            for (int attempt = 0; (item = queue.poll()) == null; attempt++) {
+                backOff(attempt);
+            }
+            return item;
+        }
+    }
+
+    private static final class SpscArray<T> extends StageQueue<T> {
+
+        private final Object[] ring;
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+        /* Only read and written by the producer */
+        private long cachedHead;
+        /* Only read and written by the consumer */
+        private long cachedTail;
+
+        SpscArray(int capacity) {
+            this.ring = new Object[capacity];
+        }
+
+        @Override
+        void put(T item) throws InterruptedException {
+            final long position = tail.get();
+            for (int attempt = 0; position - cachedHead == ring.length; attempt++) {
+                cachedHead = head.get();
+                if (position - cachedHead < ring.length) {
+                    break;
+                }
+                backOff(attempt);
+            }
+            ring[(int) (position % ring.length)] = item;
+            /* Publishes the item to the consumer */
+            tail.lazySet(position + 1);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        T take() throws InterruptedException {
+            final long position = head.get();
+            for (int attempt = 0; position == cachedTail; attempt++) {
+                cachedTail = tail.get();
+                if (position < cachedTail) {
+                    break;
+                }
+                backOff(attempt);
+            }
+            final int index = (int) (position % ring.length);
+            final T item = (T) ring[index];
+            ring[index] = null;
+            head.lazySet(position + 1);
+            return item;
+        }
+    }
+
+}
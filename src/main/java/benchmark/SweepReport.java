@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import model.TaskIteration;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the results of the variants a load was run with. The first variant is the baseline, and for every other
+ * variant the report shows how many times larger its deadline and response percentiles are than the baseline. The
+ * percentiles are those of the {@link ScalingReport}.
+ * <p>
+ * When sweeping over the parallelism of a {@link ParallelGenerator}, the report also shows the speedup of the mean
+ * deadline latency, the efficiency (the speedup divided by the relative number of threads) and the tail amplification
+ * (how much the p99.9 to mean ratio has grown compared to the baseline).
+ * </p>
+ *
+ * @author jepeders
+ */
+public class SweepReport {
+
+    public static final String OUTPUT_NAME = "sweep";
+
+    private final int load;
+    private final boolean parallel;
+    private final List<Variant> variants = new ArrayList<Variant>();
+    private final List<TaskIteration> iterations = new ArrayList<TaskIteration>();
+
+    public SweepReport(int load) {
+        this(load, false);
+    }
+
+    /**
+     * @param load     The load the variants were run with.
+     * @param parallel True if the levels of the variants are levels of parallelism.
+     */
+    public SweepReport(int load, boolean parallel) {
+        this.load = load;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Adds the results of a variant. The first variant added is the baseline.
+     */
+    public void add(Variant variant, TaskIteration iteration) {
+        variants.add(variant);
+        iterations.add(iteration);
+    }
+
+    public void write(PrintStream output) {
+        output.println(String.format("Sweep over %d variants with %d load, compared to %s", variants.size(), load,
+                variants.isEmpty() ? "nothing" : variants.get(0).getName()));
+        output.println("Values in ns; the ratios are relative to the baseline");
+        output.println();
+        writeTable(output, "Deadline", true);
+        output.println();
+        writeTable(output, "Response", false);
+        if (parallel) {
+            output.println();
+            writeSpeedup(output);
+        }
+    }
+
+    private void writeSpeedup(PrintStream output) {
+        output.println(String.format("%-24s %8s %12s %8s %10s %8s", "Parallel", "level", "mean", "speedup",
+                "efficiency", "tail x"));
+        if (iterations.isEmpty()) {
+            return;
+        }
+        final Histogram baseline = iterations.get(0).getDeadlineHistogram();
+        final double baselineLevel = variants.get(0).getLevel();
+        final double baselineTail = ratio(baseline.getValueAtPercentile(99.9), baseline.getMean());
+        for (int i = 0; i < variants.size(); i++) {
+            final Histogram histogram = iterations.get(i).getDeadlineHistogram();
+            final double level = variants.get(i).getLevel();
+            final double speedup = ratio(baseline.getMean(), histogram.getMean());
+            final double tail = ratio(histogram.getValueAtPercentile(99.9), histogram.getMean());
+            output.println(String.format("%-24s %8.2f %12.0f %8.2f %10.2f %8.2f", variants.get(i).getName(), level,
+                    histogram.getMean(), speedup, speedup / ratio(level, baselineLevel), ratio(tail, baselineTail)));
+        }
+    }
+
+    private void writeTable(PrintStream output, String title, boolean deadline) {
+        final StringBuilder header = new StringBuilder(String.format("%-24s %8s", title, "level"));
+        for (String name : ScalingReport.PERCENTILE_NAMES) {
+            header.append(String.format(" %12s", name));
+        }
+        for (String name : ScalingReport.PERCENTILE_NAMES) {
+            header.append(String.format(" %8s", name + " x"));
+        }
+        output.println(header);
+
+        final long[] baseline = iterations.isEmpty() ? null
+                : ScalingReport.percentiles(histogram(iterations.get(0), deadline));
+        for (int i = 0; i < variants.size(); i++) {
+            final long[] values = ScalingReport.percentiles(histogram(iterations.get(i), deadline));
+            final StringBuilder row = new StringBuilder(String.format("%-24s %8.2f", variants.get(i).getName(),
+                    variants.get(i).getLevel()));
+            for (long value : values) {
+                row.append(String.format(" %12d", value));
+            }
+            for (int p = 0; p < values.length; p++) {
+                row.append(String.format(" %8.2f", ratio(values[p], baseline[p])));
+            }
+            output.println(row);
+        }
+    }
+
+    static double ratio(double value, double baseline) {
+        return baseline <= 0 ? Double.NaN : value / baseline;
+    }
+
+    private static Histogram histogram(TaskIteration iteration, boolean deadline) {
+        return deadline ? iteration.getDeadlineHistogram() : iteration.getHiccupHistogram();
+    }
+
+}
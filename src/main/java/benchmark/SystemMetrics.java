@@ -4,27 +4,40 @@
 
 package benchmark;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
 import java.lang.management.ClassLoadingMXBean;
 import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * A snapshot of the JVM and operating system metrics, which can be compared to a later snapshot. On Linux the snapshot
+ * includes the scheduling, page fault and pressure statistics of the process and the current thread from
+ * <code>/proc</code>; on other systems these are left out.
+ *
+ * @author jepeders
+ */
 public class SystemMetrics implements Metrics<SystemMetrics> {
 
     private final GcMetrics gcMetrics = GcMetrics.create();
     private final ClassLoadingMetrics classMetrics = ClassLoadingMetrics.create();
     private final MemoryMetrics memoryMetrics = new MemoryMetrics();
+    private final ProcMetrics procMetrics = ProcMetrics.create();
 
     @Override
     public String getMetrics() {
         return "\nSystem statistics:\n" + classMetrics.getMetrics() +
-                gcMetrics.getMetrics() + memoryMetrics.getMetrics();
+                gcMetrics.getMetrics() + memoryMetrics.getMetrics() + procMetrics.getMetrics();
     }
 
     @Override
     public String compareMetrics(SystemMetrics that) {
         return "System statistics comparison:\n" + classMetrics.compareMetrics(that.classMetrics) +
-                gcMetrics.compareMetrics(that.gcMetrics) + memoryMetrics.compareMetrics(that.memoryMetrics);
+                gcMetrics.compareMetrics(that.gcMetrics) + memoryMetrics.compareMetrics(that.memoryMetrics) +
+                procMetrics.compareMetrics(that.procMetrics);
     }
 
     private static final class ClassLoadingMetrics implements Metrics<ClassLoadingMetrics> {
@@ -88,9 +101,26 @@ public class SystemMetrics implements Metrics<SystemMetrics> {
             return "Garbage collector statistics:\n" + builder.toString();
         }
 
+        /**
+         * Compares the collections of every collector by name. Collectors missing from the later snapshot are left
+         * out.
+         */
         @Override
         public String compareMetrics(GcMetrics that) {
-            return "";
+            final StringBuilder builder = new StringBuilder();
+            for (GcMetrics.MemoryManagerMetrics before : metrics) {
+                for (GcMetrics.MemoryManagerMetrics after : that.metrics) {
+                    if (before.name.equals(after.name)) {
+                        builder.append(String.format("\t%s:\n", before.name));
+                        builder.append(String.format("\t\tGarbage collections diff: %d (%d/%d)\n",
+                                after.count - before.count, after.count, before.count));
+                        builder.append(String.format("\t\tCollection time diff in milliseconds: %d (%d/%d)\n",
+                                after.time - before.time, after.time, before.time));
+                    }
+                }
+            }
+
+            return "Garbage collector statistics comparison:\n" + builder.toString();
         }
 
         private static final class MemoryManagerMetrics {
@@ -131,4 +161,185 @@ public class SystemMetrics implements Metrics<SystemMetrics> {
         }
     }
 
+    /**
+     * Metrics read from the Linux <code>/proc</code> file system. The context switches and the run-queue delay are those
+     * of the thread taking the snapshot, which is the benchmark thread; the page faults are those of the whole process.
+     * Every value which cannot be read is -1.
+     */
+    private static final class ProcMetrics implements Metrics<ProcMetrics> {
+
+        private static final long NOT_AVAILABLE = -1;
+
+        final long voluntaryContextSwitches;
+        final long involuntaryContextSwitches;
+        final long minorFaults;
+        final long majorFaults;
+        final long runQueueDelayInNanos;
+        final long cpuPressureInMicros;
+        final long memoryPressureInMicros;
+        final long memoryFullPressureInMicros;
+
+        private ProcMetrics(long[] contextSwitches, long[] faults, long runQueueDelayInNanos, long cpuPressureInMicros,
+                            long[] memoryPressureInMicros) {
+            this.voluntaryContextSwitches = contextSwitches[0];
+            this.involuntaryContextSwitches = contextSwitches[1];
+            this.minorFaults = faults[0];
+            this.majorFaults = faults[1];
+            this.runQueueDelayInNanos = runQueueDelayInNanos;
+            this.cpuPressureInMicros = cpuPressureInMicros;
+            this.memoryPressureInMicros = memoryPressureInMicros[0];
+            this.memoryFullPressureInMicros = memoryPressureInMicros[1];
+        }
+
+        static ProcMetrics create() {
+            final File threadDirectory = new File("/proc/thread-self");
+            final File directory = threadDirectory.isDirectory() ? threadDirectory : new File("/proc/self");
+            return new ProcMetrics(readContextSwitches(new File(directory, "status")),
+                    readFaults(new File("/proc/self/stat")),
+                    readField(new File(directory, "schedstat"), 1),
+                    readPressure(new File("/proc/pressure/cpu"))[0],
+                    readPressure(new File("/proc/pressure/memory")));
+        }
+
+        boolean isAvailable() {
+            return voluntaryContextSwitches != NOT_AVAILABLE || minorFaults != NOT_AVAILABLE
+                    || runQueueDelayInNanos != NOT_AVAILABLE || cpuPressureInMicros != NOT_AVAILABLE;
+        }
+
+        @Override
+        public String getMetrics() {
+            if (!isAvailable()) {
+                return "";
+            }
+            return "Linux process statistics:\n" +
+                    String.format("\tVoluntary context switches:   %s\n", format(voluntaryContextSwitches)) +
+                    String.format("\tInvoluntary context switches: %s\n", format(involuntaryContextSwitches)) +
+                    String.format("\tMinor page faults:            %s\n", format(minorFaults)) +
+                    String.format("\tMajor page faults:            %s\n", format(majorFaults)) +
+                    String.format("\tRun-queue delay (ns):         %s\n", format(runQueueDelayInNanos)) +
+                    String.format("\tCPU pressure stall (us):      %s\n", format(cpuPressureInMicros)) +
+                    String.format("\tMemory pressure stall (us):   %s (some), %s (full)\n",
+                            format(memoryPressureInMicros), format(memoryFullPressureInMicros));
+        }
+
+        @Override
+        public String compareMetrics(ProcMetrics that) {
+            if (!isAvailable()) {
+                return "";
+            }
+            return "Linux process statistics comparison:\n" +
+                    diff("Voluntary context switches diff:   ", voluntaryContextSwitches,
+                            that.voluntaryContextSwitches) +
+                    diff("Involuntary context switches diff: ", involuntaryContextSwitches,
+                            that.involuntaryContextSwitches) +
+                    diff("Minor page faults diff:            ", minorFaults, that.minorFaults) +
+                    diff("Major page faults diff:            ", majorFaults, that.majorFaults) +
+                    diff("Run-queue delay diff (ns):         ", runQueueDelayInNanos, that.runQueueDelayInNanos) +
+                    diff("CPU pressure stall diff (us):      ", cpuPressureInMicros, that.cpuPressureInMicros) +
+                    diff("Memory pressure stall diff (us):   ", memoryPressureInMicros, that.memoryPressureInMicros) +
+                    diff("Memory full stall diff (us):       ", memoryFullPressureInMicros,
+                            that.memoryFullPressureInMicros);
+        }
+
+        private static String diff(String label, long before, long after) {
+            if (before == NOT_AVAILABLE || after == NOT_AVAILABLE) {
+                return String.format("\t%sn/a\n", label);
+            }
+            return String.format("\t%s%d (%d/%d)\n", label, after - before, after, before);
+        }
+
+        private static String format(long value) {
+            return value == NOT_AVAILABLE ? "n/a" : Long.toString(value);
+        }
+
+        /**
+         * Reads the voluntary and involuntary context switches from a <code>status</code> file.
+         */
+        private static long[] readContextSwitches(File file) {
+            final long[] switches = {NOT_AVAILABLE, NOT_AVAILABLE};
+            for (String line : readLines(file)) {
+                if (line.startsWith("voluntary_ctxt_switches:")) {
+                    switches[0] = parse(line.substring(line.indexOf(':') + 1));
+                } else if (line.startsWith("nonvoluntary_ctxt_switches:")) {
+                    switches[1] = parse(line.substring(line.indexOf(':') + 1));
+                }
+            }
+            return switches;
+        }
+
+        /**
+         * Reads the minor and major page faults from a <code>stat</code> file. The fields are counted after the
+         * command name, which is in parentheses and can contain spaces.
+         */
+        private static long[] readFaults(File file) {
+            final long[] faults = {NOT_AVAILABLE, NOT_AVAILABLE};
+            final List<String> lines = readLines(file);
+            if (lines.isEmpty() || lines.get(0).lastIndexOf(')') < 0) {
+                return faults;
+            }
+            final String line = lines.get(0);
+            final String[] fields = line.substring(line.lastIndexOf(')') + 1).trim().split("\\s+");
+            /* minflt and majflt are the 10th and 12th fields of the file; the state is the 3rd */
+            if (fields.length > 9) {
+                faults[0] = parse(fields[7]);
+                faults[1] = parse(fields[9]);
+            }
+            return faults;
+        }
+
+        /**
+         * Reads the some and full totals from a pressure stall information file.
+         */
+        private static long[] readPressure(File file) {
+            final long[] totals = {NOT_AVAILABLE, NOT_AVAILABLE};
+            for (String line : readLines(file)) {
+                final int index = line.startsWith("some") ? 0 : line.startsWith("full") ? 1 : -1;
+                final int total = line.indexOf("total=");
+                if (index >= 0 && total >= 0) {
+                    totals[index] = parse(line.substring(total + "total=".length()));
+                }
+            }
+            return totals;
+        }
+
+        private static long readField(File file, int field) {
+            final List<String> lines = readLines(file);
+            if (lines.isEmpty()) {
+                return NOT_AVAILABLE;
+            }
+            final String[] fields = lines.get(0).trim().split("\\s+");
+            return fields.length > field ? parse(fields[field]) : NOT_AVAILABLE;
+        }
+
+        private static long parse(String value) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                return NOT_AVAILABLE;
+            }
+        }
+
+        private static List<String> readLines(File file) {
+            final List<String> lines = new ArrayList<String>();
+            if (!file.canRead()) {
+                return lines;
+            }
+            try {
+                final BufferedReader reader = new BufferedReader(new FileReader(file));
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        lines.add(line);
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                /* The file is not available on this system */
+                lines.clear();
+            }
+            return lines;
+        }
+    }
+
 }
@@ -4,11 +4,17 @@
 
 package benchmark;
 
+import model.Batching;
 import model.Task;
 import model.TaskIteration;
 
 import org.HdrHistogram.Histogram;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
 /**
  * A class that can run a task and record the time of each run in a {@link Histogram} object. This runner will also
  * 'warm up' the VM to make sure that all JIT and other run-time optimisations have been performed <i>before</i> the
@@ -18,24 +24,140 @@ import org.HdrHistogram.Histogram;
  */
 public class TaskRunner {
 
+    public static final String UNBATCHED_HISTOGRAM = "unbatched";
+    public static final String CPU_HISTOGRAM = "cpu";
+    public static final String OFF_CPU_HISTOGRAM = "offcpu";
+
+    private static final int CPU_CALIBRATION_ROUNDS = 1000;
+
     private final Task task;
     private final long runningTimeInNanos;
-    private Class<?> classToTest ;
-    private Object objectForTest;
+    private final Workload workload;
+    private final Workload[] workloads;
+    private TimerCalibration overhead = TimerCalibration.none();
+    private ThreadMXBean threadBean;
+    private long cpuReadOverheadInNanos;
+    private ThreadMXBean contentionBean;
+    private boolean profileMisses;
+    private File sampleFolder;
 
     /**
      * Creates a TaskRunner with a task that runs for a given duration in total.
      *
      * @param task           The task to iterate over many times.
-     * @param generator      The {@link LoadGenerator} to create the load.
+     * @param workload       The {@link Workload} running the {@link LoadGenerator} to create the load.
+     * @param runtimeInNanos The total runtime of the task.
+     */
+    public TaskRunner(Task task, Workload workload, long runtimeInNanos) {
+        this(task, new Workload[] { workload }, runtimeInNanos);
+    }
+
+    /**
+     * Creates a TaskRunner with a task that runs in an open loop with a {@link Workload} per worker thread.
+     *
+     * @param task           The task to iterate over many times.
+     * @param workloads      The workloads of the workers. The first workload is used when the task runs in a closed
+     *                       loop.
      * @param runtimeInNanos The total runtime of the task.
+     * @throws IllegalArgumentException If there are fewer workloads than workers in the arrival of the task.
      */
-    public TaskRunner(Task task, Class<?> classTotest, Object objectToTest, long runtimeInNanos) {
+    public TaskRunner(Task task, Workload[] workloads, long runtimeInNanos) {
+        if (task.getArrival() != null && workloads.length < task.getArrival().workers) {
+            throw new IllegalArgumentException(String.format("The open loop needs %d workloads, but got %d",
+                    task.getArrival().workers, workloads.length));
+        }
         this.task = task;
         this.runningTimeInNanos = runtimeInNanos;
-        this.objectForTest = objectToTest;
-        this.classToTest = classTotest;
-        
+        this.workload = workloads[0];
+        this.workloads = workloads;
+    }
+
+    /**
+     * Subtracts the overhead of the harness measured by the calibration from the deadlines and hiccups recorded by
+     * the following runs.
+     *
+     * @param calibration The calibration to subtract.
+     */
+    public void subtractOverhead(TimerCalibration calibration) {
+        this.overhead = calibration;
+    }
+
+    /**
+     * Records the CPU time of the benchmark thread during every iteration in the <code>cpu</code> histogram and the
+     * wall time minus the CPU time in the <code>offcpu</code> histogram. Time off the CPU is spent descheduled,
+     * blocked or stalled by the JVM, rather than doing the work of the iteration. Only tasks running in a closed loop
+     * without batching record the CPU time.
+     *
+     * @throws IllegalArgumentException If the JVM cannot measure the CPU time of the current thread.
+     */
+    public void recordCpuTime() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!bean.isCurrentThreadCpuTimeSupported()) {
+            throw new IllegalArgumentException("The JVM does not support measuring the CPU time of a thread");
+        }
+        bean.setThreadCpuTimeEnabled(true);
+        this.threadBean = bean;
+        this.cpuReadOverheadInNanos = calibrateCpuRead(bean);
+    }
+
+    /**
+     * Measures the CPU time the reads of the CPU time add to an empty iteration beyond its wall time, which is
+     * subtracted from the CPU time of every iteration. The median of a number of rounds is used, so the rounds where
+     * the thread was descheduled do not count.
+     */
+    private static long calibrateCpuRead(ThreadMXBean bean) {
+        final long[] rounds = new long[CPU_CALIBRATION_ROUNDS];
+        /* The first pass warms up the reads */
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < rounds.length; i++) {
+                final long cpuStartInNanos = bean.getCurrentThreadCpuTime();
+                final long startInNanos = System.nanoTime();
+                final long endInNanos = System.nanoTime();
+                final long cpuEndInNanos = bean.getCurrentThreadCpuTime();
+                rounds[i] = (cpuEndInNanos - cpuStartInNanos) - (endInNanos - startInNanos);
+            }
+        }
+        Arrays.sort(rounds);
+        return Math.max(0, rounds[rounds.length / 2]);
+    }
+
+    /**
+     * Records the lock and monitor contention of the benchmark thread and the threads of the load generator during
+     * every iteration, and writes the most contended locks to a <code>contention</code> report per load. Only tasks
+     * running in a closed loop without batching record the contention.
+     *
+     * @throws IllegalArgumentException If the JVM cannot measure the contention of threads.
+     * @see ContentionProbe
+     */
+    public void recordContention() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!bean.isThreadContentionMonitoringSupported()) {
+            throw new IllegalArgumentException("The JVM does not support monitoring the contention of threads");
+        }
+        bean.setThreadContentionMonitoringEnabled(true);
+        this.contentionBean = bean;
+    }
+
+    /**
+     * Samples the stack of the benchmark thread while an iteration overruns the deadline of the task, and writes the
+     * samples to a <code>stacks</code> report per load in the collapsed stack format. Only tasks with a deadline
+     * running in a closed loop without batching are profiled.
+     *
+     * @see MissProfiler
+     */
+    public void profileMisses() {
+        this.profileMisses = true;
+    }
+
+    /**
+     * Captures every sample of the following runs in a <code>&lt;load&gt;_raw</code> file in the given folder, in the
+     * order the samples were recorded. Only tasks running in a closed loop without batching capture the samples.
+     *
+     * @param folder The folder to write the samples to or null to stop capturing.
+     * @see SampleCapture
+     */
+    public void captureSamples(File folder) {
+        this.sampleFolder = folder;
     }
 
     /**
@@ -45,47 +167,319 @@ public class TaskRunner {
      * @return A {@link Histogram} object containing the recorded runtimes.
      */
     public final TaskIteration run(int load) {
+        if (task.getArrival() != null) {
+            return runOpenLoop(load);
+        }
+        /* Threads started while setting up the workload belong to the generator */
+        final ContentionProbe contentionProbe = contentionBean == null || task.getBatching() != null ? null
+                : new ContentionProbe(contentionBean);
+        workload.setup(load);
+        try {
+            if (contentionProbe != null) {
+                contentionProbe.trackNewThreads();
+            }
+            final TaskIteration iteration = task.getBatching() != null ? runBatches(load)
+                    : runIterations(load, contentionProbe);
+            workload.contribute(iteration);
+            return iteration;
+        } finally {
+            workload.teardown(load);
+        }
+    }
+
+    /**
+     * Runs the given number of iterations of the task in a closed loop, without warming up first. Used to measure the
+     * deadlines of the first iterations in a freshly started JVM.
+     *
+     * @param load       The amount of load to generate.
+     * @param iterations The number of iterations to run.
+     * @param launch     The launch to record the first iteration and the state after the last iteration in.
+     * @return The recorded histograms.
+     */
+    public TaskIteration runFirst(int load, int iterations, ColdStartLaunch launch) {
         final SystemMetrics statusBefore = new SystemMetrics();
-        final HiccupRecorder hiccupRecorder = new HiccupRecorder(true);
+        final HiccupRecorder hiccupRecorder = new HiccupRecorder(true, overhead.sleepOvershootInNanos);
         final MetricRecorder deadlineRecorder = new MetricRecorder();
         final MetricRecorder periodRecorder = new MetricRecorder();
-        final long stopTimeInNanos = System.nanoTime() + runningTimeInNanos;
+        long lastStartInNanos = -1;
+
+        workload.setup(load);
+        hiccupRecorder.start();
+        try {
+            for (int i = 0; i < iterations; i++) {
+                final long startInNanos = System.nanoTime();
+                task.iteration(workload, load);
+                final long deadlineInNanos = System.nanoTime() - startInNanos;
+                if (i == 0) {
+                    launch.firstIteration(startInNanos, deadlineInNanos);
+                }
+                deadlineRecorder.record(deadlineInNanos, task.deadlineInNanos);
+                if (lastStartInNanos > 0) {
+                    periodRecorder.record(startInNanos - lastStartInNanos, task.periodInNanos);
+                }
+                lastStartInNanos = startInNanos;
+            }
+        } finally {
+            workload.teardown(load);
+        }
+        final Histogram hiccupHistogram = hiccupRecorder.terminate();
+        launch.lastIteration();
+        return new TaskIteration(load, statusBefore, new SystemMetrics(), deadlineRecorder.getHistogram(),
+                periodRecorder.getHistogram(), hiccupHistogram);
+    }
+
+    private TaskIteration runOpenLoop(int load) {
+        final int requestLoad = OpenLoopRunner.getRequestLoad(task, load);
+        int ready = 0;
+        try {
+            for (; ready < workloads.length; ready++) {
+                workloads[ready].setup(requestLoad);
+            }
+            final TaskIteration iteration = new OpenLoopRunner(task, workloads, overhead).run(load, runningTimeInNanos);
+            for (int i = 0; i < workloads.length; i++) {
+                workloads[i].contribute(iteration);
+            }
+            return iteration;
+        } finally {
+            for (int i = 0; i < ready; i++) {
+                workloads[i].teardown(requestLoad);
+            }
+        }
+    }
+
+    private TaskIteration runIterations(int load, ContentionProbe contentionProbe) {
+        final SystemMetrics statusBefore = new SystemMetrics();
+        final HiccupRecorder hiccupRecorder = new HiccupRecorder(true, overhead.sleepOvershootInNanos);
+        final MetricRecorder deadlineRecorder = new MetricRecorder();
+        final MetricRecorder periodRecorder = new MetricRecorder();
+        final MetricRecorder cpuRecorder = new MetricRecorder();
+        final MetricRecorder offCpuRecorder = new MetricRecorder();
+        final ThreadMXBean cpuTimer = threadBean;
+        final long startTimeInNanos = System.nanoTime();
+
+        /* The SLA and the convergence are checked between periods against snapshots of the recorders */
+        final LiveHistograms liveHistograms = task.getSla() == null && task.getConvergence() == null ? null
+                : new LiveHistograms(deadlineRecorder, periodRecorder, hiccupRecorder);
+        final ConvergenceMonitor convergenceMonitor = task.getConvergence() == null ? null
+                : new ConvergenceMonitor(task.getConvergence(), liveHistograms, startTimeInNanos);
+        final long stopTimeInNanos = convergenceMonitor == null ? startTimeInNanos + runningTimeInNanos
+                : convergenceMonitor.getStopTimeInNanos(runningTimeInNanos);
+        final SlaMonitor slaMonitor = task.getSla() == null ? null
+                : new SlaMonitor(task, liveHistograms, startTimeInNanos, stopTimeInNanos - startTimeInNanos);
+
+        final SampleCapture sampleCapture = sampleFolder == null ? null
+                : new SampleCapture(getSampleFile(load), load, startTimeInNanos);
+        final MissProfiler missProfiler = profileMisses && task.deadlineInNanos > 0
+                ? new MissProfiler(task.deadlineInNanos) : null;
 
         long iterationStopTimeInNanos = -1;
         long deadlineStartInNanos = -1;
+        long deadlineEndInNanos = -1;
         long deadlineDeltaInNanos = -1;
+        long periodDeltaInNanos = -1;
         long lastPeriodStartTime = -1;
+        long cpuStartInNanos = -1;
+        final long deadlineOverheadInNanos = overhead.emptyIterationInNanos;
 
         hiccupRecorder.start();
+        if (missProfiler != null) {
+            missProfiler.start();
+        }
+        if (contentionProbe != null) {
+            contentionProbe.ignoreNewThreads();
+            contentionProbe.sample();
+            contentionProbe.startSampling();
+        }
 
-        
         while (System.nanoTime() < stopTimeInNanos) {
-            
+            if (slaMonitor != null && slaMonitor.shouldStop(load, System.nanoTime())) {
+                break;
+            }
+            if (convergenceMonitor != null && convergenceMonitor.hasConverged(System.nanoTime())) {
+                break;
+            }
+            if (contentionProbe != null) {
+                contentionProbe.trackNewThreads();
+            }
+
             iterationStopTimeInNanos = System.nanoTime() + task.periodInNanos;
             while (System.nanoTime() < iterationStopTimeInNanos) {
 
-                /* Run the iteration and time it */
+                /* Run the iteration and time it. The profiler and the CPU time are handled outside the timed window */
+                if (missProfiler != null) {
+                    missProfiler.begin(System.nanoTime());
+                }
+                if (cpuTimer != null) {
+                    cpuStartInNanos = cpuTimer.getCurrentThreadCpuTime();
+                }
                 deadlineStartInNanos = System.nanoTime();
-                task.iteration(classToTest, objectForTest, load);
-                deadlineDeltaInNanos = System.nanoTime() - deadlineStartInNanos;
+                task.iteration(workload, load);
+                deadlineEndInNanos = System.nanoTime();
+                if (cpuTimer != null) {
+                    /* The CPU window holds the wall window and the calibrated cost of the reads */
+                    final long cpuDeltaInNanos = Math.max(0,
+                            cpuTimer.getCurrentThreadCpuTime() - cpuStartInNanos - cpuReadOverheadInNanos);
+                    cpuRecorder.record(cpuDeltaInNanos, 0);
+                    offCpuRecorder.record(Math.max(0, deadlineEndInNanos - deadlineStartInNanos - cpuDeltaInNanos), 0);
+                }
+                if (missProfiler != null) {
+                    missProfiler.end();
+                }
+                deadlineDeltaInNanos = Math.max(0, deadlineEndInNanos - deadlineStartInNanos - deadlineOverheadInNanos);
 
                 /* Record the deadline */
                 deadlineRecorder.record(deadlineDeltaInNanos, task.deadlineInNanos);
+                if (liveHistograms != null) {
+                    liveHistograms.recordDeadline(deadlineDeltaInNanos);
+                }
 
                 /* Record the period */
                 if (lastPeriodStartTime > 0) {
-                    periodRecorder.record(deadlineStartInNanos - lastPeriodStartTime, task.periodInNanos);
+                    periodDeltaInNanos = deadlineStartInNanos - lastPeriodStartTime;
+                    periodRecorder.record(periodDeltaInNanos, task.periodInNanos);
                 }
                 lastPeriodStartTime = deadlineStartInNanos;
+
+                if (sampleCapture != null) {
+                    sampleCapture.record(deadlineStartInNanos, deadlineDeltaInNanos, periodDeltaInNanos);
+                }
+                if (contentionProbe != null) {
+                    contentionProbe.sample();
+                }
             }
             
         }
 
+        Histogram hiccupHistogram = hiccupRecorder.terminate();
+        if (contentionProbe != null) {
+            contentionProbe.stopSampling();
+        }
+        SystemMetrics statusAfter = new SystemMetrics();
+
+        TaskIteration iteration;
+        if (liveHistograms != null) {
+            liveHistograms.finish(hiccupHistogram);
+            iteration = new TaskIteration(load, statusBefore, statusAfter, liveHistograms.getDeadlineHistogram(),
+                    liveHistograms.getPeriodHistogram(), liveHistograms.getResponseHistogram());
+            if (slaMonitor != null) {
+                iteration.setVerdict(slaMonitor.finish(load));
+            }
+            if (convergenceMonitor != null) {
+                iteration.addNote(convergenceMonitor.describe());
+            }
+        } else {
+            iteration = new TaskIteration(load, statusBefore, statusAfter, deadlineRecorder.getHistogram(),
+                    periodRecorder.getHistogram(), hiccupHistogram);
+        }
+        if (sampleCapture != null) {
+            iteration.addNote(sampleCapture.close());
+        }
+        if (contentionProbe != null) {
+            contentionProbe.contribute(iteration);
+        }
+        if (missProfiler != null) {
+            missProfiler.terminate(iteration);
+        } else if (profileMisses) {
+            iteration.addNote("Miss profiler: not started, because the task has no deadline");
+        }
+        if (cpuTimer != null) {
+            iteration.addHistogram(CPU_HISTOGRAM, cpuRecorder.getHistogram());
+            iteration.addHistogram(OFF_CPU_HISTOGRAM, offCpuRecorder.getHistogram());
+        }
+        return iteration;
+    }
+
+    /**
+     * @return A file for the samples of the given load, which does not overwrite the samples of earlier runs.
+     */
+    private File getSampleFile(int load) {
+        File file = new File(sampleFolder, String.format("%d_raw", load));
+        for (int run = 2; file.exists(); run++) {
+            file = new File(sampleFolder, String.format("%d_raw_%d", load, run));
+        }
+        return file;
+    }
+
+    /**
+     * Runs the task like {@link #runIterations(int, ContentionProbe)}, but times a batch of iterations as one sample.
+     * The time per iteration of the batch is recorded once for every iteration in the batch, and every so often a
+     * single iteration is timed on its own and recorded in the unbatched histogram.
+     */
+    private TaskIteration runBatches(int load) {
+        final Batching batching = task.getBatching();
+        final int batchSize = chooseBatchSize(load, batching);
+        final SystemMetrics statusBefore = new SystemMetrics();
+        final HiccupRecorder hiccupRecorder = new HiccupRecorder(true, overhead.sleepOvershootInNanos);
+        final MetricRecorder deadlineRecorder = new MetricRecorder();
+        final MetricRecorder periodRecorder = new MetricRecorder();
+        final MetricRecorder unbatchedRecorder = new MetricRecorder();
+        final long stopTimeInNanos = System.nanoTime() + runningTimeInNanos;
+
+        long iterationStopTimeInNanos = -1;
+        long batchStartInNanos = -1;
+        long batchDeltaInNanos = -1;
+        long lastBatchStartTime = -1;
+        long batches = 0;
+        final long deadlineOverheadInNanos = overhead.emptyIterationInNanos;
+
+        hiccupRecorder.start();
+
+        while (System.nanoTime() < stopTimeInNanos) {
+
+            iterationStopTimeInNanos = System.nanoTime() + task.periodInNanos;
+            while (System.nanoTime() < iterationStopTimeInNanos) {
+
+                /* Run the batch and time it, paying for the timer only once */
+                batchStartInNanos = System.nanoTime();
+                for (int i = 0; i < batchSize; i++) {
+                    task.iteration(workload, load);
+                }
+                batchDeltaInNanos = Math.max(0, System.nanoTime() - batchStartInNanos - deadlineOverheadInNanos);
+
+                /* Record the deadline and period per iteration */
+                deadlineRecorder.recordWithCount(batchDeltaInNanos / batchSize, batchSize);
+                if (lastBatchStartTime > 0) {
+                    periodRecorder.recordWithCount((batchStartInNanos - lastBatchStartTime) / batchSize, batchSize);
+                }
+                lastBatchStartTime = batchStartInNanos;
+
+                /* Sample a single iteration, so the outliers are not averaged away */
+                if (batching.unbatchedEvery > 0 && ++batches % batching.unbatchedEvery == 0) {
+                    final long startInNanos = System.nanoTime();
+                    task.iteration(workload, load);
+                    unbatchedRecorder.record(Math.max(0, System.nanoTime() - startInNanos - deadlineOverheadInNanos),
+                            task.deadlineInNanos);
+                }
+            }
+
+        }
+
         Histogram hiccupHistogram = hiccupRecorder.terminate();
         SystemMetrics statusAfter = new SystemMetrics();
 
-        return new TaskIteration(load, statusBefore, statusAfter, deadlineRecorder.getHistogram(),
+        TaskIteration iteration = new TaskIteration(load, statusBefore, statusAfter, deadlineRecorder.getHistogram(),
                 periodRecorder.getHistogram(), hiccupHistogram);
+        iteration.addHistogram(UNBATCHED_HISTOGRAM, unbatchedRecorder.getHistogram());
+        iteration.addNote(String.format("Batched sampling: %d iterations per sample", batchSize));
+        return iteration;
+    }
+
+    /**
+     * Doubles the number of iterations in a batch until a batch takes at least the target duration.
+     */
+    private int chooseBatchSize(int load, Batching batching) {
+        int batchSize = 1;
+        while (batchSize < batching.maxBatchSize) {
+            final long startInNanos = System.nanoTime();
+            for (int i = 0; i < batchSize; i++) {
+                task.iteration(workload, load);
+            }
+            if (System.nanoTime() - startInNanos >= batching.targetBatchInNanos) {
+                break;
+            }
+            batchSize = (int) Math.min(2L * batchSize, batching.maxBatchSize);
+        }
+        return batchSize;
     }
 
     /**
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import model.Task;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+
+/**
+ * Measures the cost and precision of the timers used by the benchmark on the current host. The calibration measures
+ * the cost of a call to {@link System#nanoTime()}, the granularity of the clock, the overhead of timing an empty
+ * iteration of a task and how much a sleep of one resolution of the {@link HiccupRecorder} overshoots.
+ * <p>
+ * The empty iteration overhead and the sleep overshoot can be subtracted from the deadline and response histograms, so
+ * the harness itself is not reported as part of very short tasks.
+ * </p>
+ *
+ * @author jepeders
+ */
+public class TimerCalibration {
+
+    private static final int ROUNDS = 5;
+    private static final int TIMER_CALLS = 1000000;
+    private static final int GRANULARITY_SAMPLES = 1000;
+    private static final int EMPTY_ITERATIONS = 1000000;
+    private static final int SLEEP_SAMPLES = 200;
+
+    public final double nanoTimeCostInNanos;
+    public final long granularityInNanos;
+    public final long emptyIterationInNanos;
+    public final long sleepOvershootInNanos;
+    public final long maxSleepOvershootInNanos;
+
+    private TimerCalibration(double nanoTimeCostInNanos, long granularityInNanos, long emptyIterationInNanos,
+                             long sleepOvershootInNanos, long maxSleepOvershootInNanos) {
+        this.nanoTimeCostInNanos = nanoTimeCostInNanos;
+        this.granularityInNanos = granularityInNanos;
+        this.emptyIterationInNanos = emptyIterationInNanos;
+        this.sleepOvershootInNanos = sleepOvershootInNanos;
+        this.maxSleepOvershootInNanos = maxSleepOvershootInNanos;
+    }
+
+    /**
+     * Calibrates the timers by timing the iterations of the given task with a generator that does nothing.
+     *
+     * @param task The task to time empty iterations of.
+     * @return The measured calibration.
+     */
+    public static TimerCalibration measure(Task task) {
+        final Histogram sleepOvershoot = measureSleepOvershoot();
+        return new TimerCalibration(measureNanoTimeCost(), measureGranularity(), measureEmptyIteration(task),
+                sleepOvershoot.getValueAtPercentile(50), sleepOvershoot.getMaxValue());
+    }
+
+    /**
+     * @return A calibration which subtracts nothing.
+     */
+    public static TimerCalibration none() {
+        return new TimerCalibration(0, 0, 0, 0, 0);
+    }
+
+    public void write(PrintStream output) {
+        output.println("Timer calibration:");
+        output.println(String.format("\tnanoTime cost:                   %.1fns", nanoTimeCostInNanos));
+        output.println(String.format("\tnanoTime granularity:            %dns", granularityInNanos));
+        output.println(String.format("\tEmpty iteration overhead:        %dns (median)", emptyIterationInNanos));
+        output.println(String.format("\tSleep overshoot for %dms:         %dns (median), %dns (max)",
+                HiccupRecorder.RESOLUTION_IN_MS, sleepOvershootInNanos, maxSleepOvershootInNanos));
+    }
+
+    private static double measureNanoTimeCost() {
+        double cost = Double.MAX_VALUE;
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            final long start = System.nanoTime();
+            for (int i = 0; i < TIMER_CALLS; i++) {
+                sink += System.nanoTime();
+            }
+            final long end = System.nanoTime();
+            cost = Math.min(cost, (double) (end - start) / TIMER_CALLS);
+        }
+        new Blackhole().consume(sink);
+        return cost;
+    }
+
+    private static long measureGranularity() {
+        long granularity = Long.MAX_VALUE;
+        for (int i = 0; i < GRANULARITY_SAMPLES; i++) {
+            final long start = System.nanoTime();
+            long now;
+            do {
+                now = System.nanoTime();
+            } while (now == start);
+            granularity = Math.min(granularity, now - start);
+        }
+        return granularity;
+    }
+
+    /**
+     * Times empty iterations exactly like the {@link TaskRunner} does and returns the median.
+     */
+    private static long measureEmptyIteration(Task task) {
+        final Workload workload = Workload.of(new SinkLoadGenerator() {
+            @Override
+            public void generateLoad(int load, Blackhole blackhole) {
+                /* Empty */
+            }
+        });
+        final Histogram histogram = new Histogram(3);
+        for (int round = 0; round < ROUNDS; round++) {
+            histogram.reset();
+            for (int i = 0; i < EMPTY_ITERATIONS; i++) {
+                final long start = System.nanoTime();
+                task.iteration(workload, 1);
+                histogram.recordValue(System.nanoTime() - start);
+            }
+        }
+        return histogram.getValueAtPercentile(50);
+    }
+
+    /**
+     * Sleeps for one resolution of the {@link HiccupRecorder} a number of times and records the overshoot.
+     */
+    private static Histogram measureSleepOvershoot() {
+        final long resolutionInNanos = HiccupRecorder.RESOLUTION_IN_NANOS;
+        final Histogram histogram = new Histogram(3);
+        try {
+            for (int i = 0; i < SLEEP_SAMPLES; i++) {
+                final long start = System.nanoTime();
+                NANOSECONDS.sleep(resolutionInNanos);
+                histogram.recordValue(Math.max(0, System.nanoTime() - start - resolutionInNanos));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return histogram;
+    }
+
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import model.TaskIteration;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+/**
+ * Launches trials of a task in fresh JVMs. Each trial is started with the given command, followed by the
+ * <code>-trial</code> flag, the load and the folder to write the results to. The forked JVM writes its encoded
+ * histograms to a file in that folder, which is read back once the JVM exits. Cold starts are launched the same way
+ * with the <code>-coldstart</code> flag.
+ *
+ * @author jepeders
+ */
+public class TrialLauncher {
+
+    public static final String TRIAL_FLAG = "-trial";
+    public static final String TRIAL_LOG_NAME = "trial.histograms";
+    private static final String TRIAL_OUTPUT_NAME = "output";
+
+    private static final String DEADLINE_TAG = "deadline";
+    private static final String PERIOD_TAG = "period";
+    private static final String HICCUP_TAG = "response";
+
+    private final List<String> command;
+
+    /**
+     * Creates a launcher which forks JVMs with the given command.
+     *
+     * @param command The command starting a JVM with the benchmark, excluding the trial arguments.
+     */
+    public TrialLauncher(List<String> command) {
+        this.command = new ArrayList<String>(command);
+    }
+
+    /**
+     * Runs one trial in a fresh JVM and blocks until it completes.
+     *
+     * @param load   The load to run the trial with.
+     * @param folder The folder to store the output of the forked JVM in.
+     * @return The results of the trial.
+     * @throws IllegalStateException If the forked JVM failed.
+     */
+    public TaskIteration launch(int load, File folder) {
+        /* The system metrics of the forked JVM are not available, so the metrics of this JVM are used */
+        final SystemMetrics statusBefore = new SystemMetrics();
+        fork(folder, TRIAL_FLAG, Integer.toString(load), folder.getPath());
+        final SystemMetrics statusAfter = new SystemMetrics();
+
+        return readTrial(new File(folder, TRIAL_LOG_NAME), load, statusBefore, statusAfter);
+    }
+
+    /**
+     * Launches a fresh JVM which runs the given number of iterations without warming up, and blocks until it
+     * completes. The time of the launch is passed to the JVM, so it can measure how long it took to start.
+     *
+     * @param load       The load to run the iterations with.
+     * @param iterations The number of iterations to run.
+     * @param folder     The folder to store the output of the forked JVM in.
+     * @return The startup costs and the results of the iterations.
+     * @throws IllegalStateException If the forked JVM failed.
+     */
+    public ColdStartLaunch launchColdStart(int load, int iterations, File folder) {
+        final SystemMetrics statusBefore = new SystemMetrics();
+        fork(folder, ColdStartLaunch.FLAG, Integer.toString(load), Integer.toString(iterations), folder.getPath(),
+                Long.toString(System.currentTimeMillis()));
+        final SystemMetrics statusAfter = new SystemMetrics();
+
+        final ColdStartLaunch launch = ColdStartLaunch.read(new File(folder, ColdStartLaunch.RESULTS_NAME));
+        launch.iteration = readTrial(new File(folder, TRIAL_LOG_NAME), load, statusBefore, statusAfter);
+        return launch;
+    }
+
+    /**
+     * Starts the command with the given arguments and waits for it to exit. The output of the JVM is stored in the
+     * folder.
+     */
+    private void fork(File folder, String... arguments) {
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IllegalArgumentException("Failed to create folder " + folder);
+        }
+
+        final List<String> trialCommand = new ArrayList<String>(command);
+        trialCommand.addAll(Arrays.asList(arguments));
+        try {
+            final Process process = new ProcessBuilder(trialCommand).redirectErrorStream(true)
+                    .redirectOutput(new File(folder, TRIAL_OUTPUT_NAME)).start();
+            final int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IllegalStateException(String.format("Forked trial in %s failed with exit code %d", folder,
+                        exitCode));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to fork trial", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for forked trial", e);
+        }
+    }
+
+    /**
+     * Writes the histograms of a trial to a file, so they can be read by the JVM which forked the trial. The histograms
+     * are written in their compressed encoding, each preceded by its tag and length, followed by the notes of the
+     * iteration.
+     *
+     * @param iteration The results of the trial.
+     * @param file      The file to write the histograms to.
+     */
+    public static void writeTrial(TaskIteration iteration, File file) {
+        try {
+            final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                output.writeInt(3 + iteration.getHistograms().size());
+                writeHistogram(output, DEADLINE_TAG, iteration.getDeadlineHistogram());
+                writeHistogram(output, PERIOD_TAG, iteration.getPeriodHistogram());
+                writeHistogram(output, HICCUP_TAG, iteration.getHiccupHistogram());
+                for (Map.Entry<String, Histogram> entry : iteration.getHistograms().entrySet()) {
+                    writeHistogram(output, entry.getKey(), entry.getValue());
+                }
+                output.writeInt(iteration.getNotes().size());
+                for (String note : iteration.getNotes()) {
+                    output.writeUTF(note);
+                }
+            } finally {
+                output.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void writeHistogram(DataOutputStream output, String tag, Histogram histogram) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        final int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        output.writeUTF(tag);
+        output.writeInt(length);
+        output.write(buffer.array(), 0, length);
+    }
+
+    private static TaskIteration readTrial(File file, int load, SystemMetrics statusBefore,
+                                           SystemMetrics statusAfter) {
+        Histogram deadline = null;
+        Histogram period = null;
+        Histogram hiccup = null;
+        final Map<String, Histogram> histograms = new LinkedHashMap<String, Histogram>();
+        final List<String> notes = new ArrayList<String>();
+        try {
+            final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                final int count = input.readInt();
+                for (int i = 0; i < count; i++) {
+                    final String tag = input.readUTF();
+                    final byte[] bytes = new byte[input.readInt()];
+                    input.readFully(bytes);
+                    final Histogram histogram = Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes), 0);
+                    if (DEADLINE_TAG.equals(tag)) {
+                        deadline = histogram;
+                    } else if (PERIOD_TAG.equals(tag)) {
+                        period = histogram;
+                    } else if (HICCUP_TAG.equals(tag)) {
+                        hiccup = histogram;
+                    } else {
+                        histograms.put(tag, histogram);
+                    }
+                }
+                final int noteCount = input.readInt();
+                for (int i = 0; i < noteCount; i++) {
+                    notes.add(input.readUTF());
+                }
+            } finally {
+                input.close();
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt trial results in " + file, e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read trial results from " + file, e);
+        }
+        if (deadline == null || period == null || hiccup == null) {
+            throw new IllegalStateException("Incomplete trial results in " + file);
+        }
+        final TaskIteration iteration = new TaskIteration(load, statusBefore, statusAfter, deadline, period, hiccup);
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            iteration.addHistogram(entry.getKey(), entry.getValue());
+        }
+        for (String note : notes) {
+            iteration.addNote(note);
+        }
+        return iteration;
+    }
+
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import model.TaskIteration;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Statistics on the spread of the percentiles between repeated trials of the same load. For every percentile the mean,
+ * standard deviation, coefficient of variation and 95% confidence intervals of the mean are calculated; both a
+ * t-based interval and a bootstrapped interval.
+ *
+ * @author jepeders
+ */
+public class TrialStatistics {
+
+    /** The percentiles to compare between trials. 100 is the maximum value. */
+    public static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99, 100};
+
+    private static final int BOOTSTRAP_SAMPLES = 10000;
+    private static final long SEED = 1843710252; /* Random number */
+
+    /* Two-sided 95% critical values of the t-distribution for 1 to 30 degrees of freedom */
+    private static final double[] T_CRITICAL_VALUES = {12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306,
+            2.262, 2.228, 2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086, 2.080, 2.074, 2.069,
+            2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
+    private static final double Z_CRITICAL_VALUE = 1.960;
+
+    private final int trials;
+    private final double maxCoefficientOfVariation;
+    private final Row[] deadlineRows;
+    private final Row[] hiccupRows;
+
+    private TrialStatistics(int trials, double maxCoefficientOfVariation, Row[] deadlineRows, Row[] hiccupRows) {
+        this.trials = trials;
+        this.maxCoefficientOfVariation = maxCoefficientOfVariation;
+        this.deadlineRows = deadlineRows;
+        this.hiccupRows = hiccupRows;
+    }
+
+    /**
+     * Calculates the statistics for a number of trials.
+     *
+     * @param iterations                The results of each trial.
+     * @param maxCoefficientOfVariation The largest coefficient of variation to accept before the trials are unstable.
+     * @return The statistics of the trials.
+     */
+    public static TrialStatistics of(List<TaskIteration> iterations, double maxCoefficientOfVariation) {
+        final Histogram[] deadlines = new Histogram[iterations.size()];
+        final Histogram[] hiccups = new Histogram[iterations.size()];
+        for (int i = 0; i < deadlines.length; i++) {
+            deadlines[i] = iterations.get(i).getDeadlineHistogram();
+            hiccups[i] = iterations.get(i).getHiccupHistogram();
+        }
+        return new TrialStatistics(iterations.size(), maxCoefficientOfVariation, rows(deadlines), rows(hiccups));
+    }
+
+    /**
+     * A set of trials is unstable if the coefficient of variation of any deadline percentile, except the maximum, is
+     * above the threshold.
+     *
+     * @return True if the variance between the trials is too high to trust the results.
+     */
+    public boolean isUnstable() {
+        for (Row row : deadlineRows) {
+            if (row.percentile < 100 && row.isUnstable(maxCoefficientOfVariation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void write(PrintStream output) {
+        output.println(String.format("Statistics over %d trials (95%% confidence intervals of the mean in ns)",
+                trials));
+        output.println(String.format("Coefficients of variation above %.3f are marked with *",
+                maxCoefficientOfVariation));
+        output.println();
+        writeRows("Deadline", deadlineRows, output);
+        output.println();
+        writeRows("Response", hiccupRows, output);
+        output.println();
+        output.println(isUnstable() ? "Verdict: UNSTABLE - the variance between trials is too high to trust"
+                : "Verdict: STABLE");
+    }
+
+    private void writeRows(String title, Row[] rows, PrintStream output) {
+        output.println(title);
+        output.println(String.format("%10s %14s %14s %8s %31s %31s", "Percentile", "Mean", "StdDev", "CV",
+                "t-interval", "Bootstrap interval"));
+        for (Row row : rows) {
+            output.println(String.format("%10s %14.1f %14.1f %7.4f%s [%14.1f, %14.1f] [%14.1f, %14.1f]",
+                    row.percentile < 100 ? Double.toString(row.percentile) : "max", row.mean, row.standardDeviation,
+                    row.coefficientOfVariation, row.isUnstable(maxCoefficientOfVariation) ? "*" : " ", row.tLower,
+                    row.tUpper, row.bootstrapLower, row.bootstrapUpper));
+        }
+    }
+
+    private static Row[] rows(Histogram[] histograms) {
+        final Row[] rows = new Row[PERCENTILES.length];
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            final double[] values = new double[histograms.length];
+            for (int j = 0; j < histograms.length; j++) {
+                values[j] = PERCENTILES[i] < 100 ? histograms[j].getValueAtPercentile(PERCENTILES[i])
+                        : histograms[j].getMaxValue();
+            }
+            rows[i] = new Row(PERCENTILES[i], values);
+        }
+        return rows;
+    }
+
+    private static double tCriticalValue(int degreesOfFreedom) {
+        return degreesOfFreedom <= T_CRITICAL_VALUES.length ? T_CRITICAL_VALUES[degreesOfFreedom - 1]
+                : Z_CRITICAL_VALUE;
+    }
+
+    /**
+     * The spread of one percentile between the trials.
+     */
+    private static final class Row {
+        final double percentile;
+        final double mean;
+        final double standardDeviation;
+        final double coefficientOfVariation;
+        final double tLower;
+        final double tUpper;
+        final double bootstrapLower;
+        final double bootstrapUpper;
+
+        Row(double percentile, double[] values) {
+            this.percentile = percentile;
+            this.mean = mean(values);
+
+            double squares = 0;
+            for (double value : values) {
+                squares += (value - mean) * (value - mean);
+            }
+            this.standardDeviation = values.length > 1 ? Math.sqrt(squares / (values.length - 1)) : 0;
+            this.coefficientOfVariation = mean > 0 ? standardDeviation / mean : 0;
+
+            final double margin = values.length > 1
+                    ? tCriticalValue(values.length - 1) * standardDeviation / Math.sqrt(values.length) : 0;
+            this.tLower = mean - margin;
+            this.tUpper = mean + margin;
+
+            /* Bootstrap the mean by resampling the trials with replacement */
+            final Random random = new Random(SEED);
+            final double[] means = new double[BOOTSTRAP_SAMPLES];
+            final double[] sample = new double[values.length];
+            for (int i = 0; i < means.length; i++) {
+                for (int j = 0; j < sample.length; j++) {
+                    sample[j] = values[random.nextInt(values.length)];
+                }
+                means[i] = mean(sample);
+            }
+            Arrays.sort(means);
+            this.bootstrapLower = means[(int) (0.025 * (means.length - 1))];
+            this.bootstrapUpper = means[(int) (0.975 * (means.length - 1))];
+        }
+
+        boolean isUnstable(double maxCoefficientOfVariation) {
+            return coefficientOfVariation > maxCoefficientOfVariation;
+        }
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+}
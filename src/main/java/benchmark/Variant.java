@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+/**
+ * A variation of the conditions a task runs under, such as a level of interference. When a task has variants, the
+ * {@link BenchmarkRunner} runs every load once for each variant and compares the results to the first variant, which
+ * is the baseline.
+ *
+ * @author jepeders
+ */
+public interface Variant {
+
+    /**
+     * @return The name of the variant, which is also the name of the folder its results are written to.
+     */
+    String getName();
+
+    /**
+     * @return The numeric level of the variant, such as the interference level.
+     */
+    double getLevel();
+
+    /**
+     * Applies the variant before the task runs with the given load.
+     *
+     * @param load The load the task is about to run with.
+     */
+    void begin(int load);
+
+    /**
+     * Removes the variant after the task ran with the given load.
+     *
+     * @param load The load the task ran with.
+     */
+    void end(int load);
+
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package benchmark;
+
+import model.TaskIteration;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Runs a load generator on behalf of a {@link model.Task}. A workload adapts the different kinds of generators to a
+ * single call and forwards the setup and teardown to generators implementing {@link GeneratorLifecycle} and the
+ * results to generators implementing {@link ResultContributor}.
+ *
+ * @author jepeders
+ */
+public abstract class Workload {
+
+    private final Object generator;
+    protected final Blackhole blackhole = new Blackhole();
+
+    protected Workload(Object generator) {
+        this.generator = generator;
+    }
+
+    /**
+     * @return The generator run by this workload.
+     */
+    public Object getGenerator() {
+        return generator;
+    }
+
+    /**
+     * Generates the given amount of load with the generator.
+     *
+     * @param load The amount of load to generate.
+     */
+    public abstract void generateLoad(int load);
+
+    public void setup(int load) {
+        if (generator instanceof GeneratorLifecycle) {
+            ((GeneratorLifecycle) generator).setup(load);
+        }
+    }
+
+    public void teardown(int load) {
+        if (generator instanceof GeneratorLifecycle) {
+            ((GeneratorLifecycle) generator).teardown(load);
+        }
+    }
+
+    public void contribute(TaskIteration iteration) {
+        if (generator instanceof ResultContributor) {
+            ((ResultContributor) generator).contribute(iteration);
+        }
+    }
+
+    /**
+     * Creates a workload for a {@link LoadGenerator}.
+     *
+     * @param generator The generator to run.
+     * @return A workload calling the generator directly.
+     */
+    public static Workload of(final LoadGenerator<?> generator) {
+        return new Workload(generator) {
+            @Override
+            public void generateLoad(int load) {
+                blackhole.consume(generator.generateLoad(load));
+            }
+        };
+    }
+
+    /**
+     * Creates a workload for a {@link SinkLoadGenerator}, which consumes its values in the blackhole of the workload.
+     *
+     * @param generator The generator to run.
+     * @return A workload calling the generator directly.
+     */
+    public static Workload of(final SinkLoadGenerator generator) {
+        return new Workload(generator) {
+            @Override
+            public void generateLoad(int load) {
+                generator.generateLoad(load, blackhole);
+            }
+        };
+    }
+
+    /**
+     * Creates a workload for a {@link SinkLoadGenerator}, a {@link LoadGenerator} or any object with a public
+     * <code>generateLoad(int)</code> method.
+     *
+     * @param generator The generator to run.
+     * @return A workload calling the generator through reflection.
+     * @throws IllegalArgumentException If the object has no public <code>generateLoad(int)</code> method.
+     */
+    public static Workload ofObject(Object generator) {
+        if (generator instanceof SinkLoadGenerator) {
+            return of((SinkLoadGenerator) generator);
+        }
+        if (generator instanceof LoadGenerator) {
+            return of((LoadGenerator<?>) generator);
+        }
+        return new ReflectiveWorkload(generator);
+    }
+
+    private static final class ReflectiveWorkload extends Workload {
+
+        private final Method method;
+
+        ReflectiveWorkload(Object generator) {
+            super(generator);
+            try {
+                this.method = generator.getClass().getMethod("generateLoad", int.class);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException(String.format("Class %s has no public generateLoad(int) method",
+                        generator.getClass().getName()));
+            }
+        }
+
+        @Override
+        public void generateLoad(int load) {
+            try {
+                blackhole.consume(method.invoke(getGenerator(), load));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            } catch (InvocationTargetException e) {
+                e.getCause().printStackTrace(System.err);
+                System.err.println("---------------------");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package model;
+
+/**
+ * Describes how requests arrive at a {@link Task} running in open-loop mode. Requests arrive at a given rate into a
+ * bounded queue, independently of how fast the worker threads serve them. The arrivals are either evenly spaced
+ * (constant), exponentially spaced (poisson) or arrive in bursts of a number of requests at once (bursty).
+ * <p>
+ * By default the rate is fixed and the load of every request doubles with the load iterations. When scaling by rate,
+ * every request generates the initial workload of the task and the rate doubles instead.
+ * </p>
+ *
+ * @author jepeders
+ */
+public class Arrival {
+
+    public static final String CONSTANT = "constant";
+    public static final String POISSON = "poisson";
+    public static final String BURSTY = "bursty";
+
+    public static final String SCALE_LOAD = "load";
+    public static final String SCALE_RATE = "rate";
+
+    /** The distribution of the arrivals: constant, poisson or bursty. */
+    public String distribution = CONSTANT;
+    /** The mean number of requests arriving per second. */
+    public double ratePerSecond = 100;
+    /** The number of requests arriving at once in the bursty distribution. */
+    public int burstSize = 10;
+    /** The number of requests that can wait in the queue before new arrivals are dropped. */
+    public int queueCapacity = 1024;
+    /** The number of threads serving the requests, each with its own load generator. */
+    public int workers = 1;
+    /** What doubles with the load iterations: the load of each request or the arrival rate. */
+    public String scaling = SCALE_LOAD;
+
+    /**
+     * @throws IllegalArgumentException If the arrival parameters are not valid.
+     */
+    public void validate() {
+        if (!CONSTANT.equals(distribution) && !POISSON.equals(distribution) && !BURSTY.equals(distribution)) {
+            throw new IllegalArgumentException("Unknown arrival distribution " + distribution);
+        }
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("The arrival rate must be positive");
+        }
+        if (burstSize < 1) {
+            throw new IllegalArgumentException("The burst size must be at least 1");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("The queue capacity must be at least 1");
+        }
+        if (workers < 1) {
+            throw new IllegalArgumentException("An open loop needs at least 1 worker");
+        }
+        if (!SCALE_LOAD.equals(scaling) && !SCALE_RATE.equals(scaling)) {
+            throw new IllegalArgumentException("Unknown scaling " + scaling);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s arrivals at %.1f requests/s, %d workers, queue of %d", distribution, ratePerSecond,
+                workers, queueCapacity);
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package model;
+
+/**
+ * Describes how a {@link Task} with very short iterations is sampled in batches. Instead of timing every iteration,
+ * a batch of consecutive iterations is timed as one sample and the time per iteration is recorded once for each
+ * iteration in the batch. The batch size is doubled until a batch takes at least the target duration, so the cost of
+ * the timer is negligible compared to the batch.
+ * <p>
+ * Averaging over a batch hides the outliers within it, so every so often a single iteration is timed on its own and
+ * recorded in a separate <code>unbatched</code> histogram.
+ * </p>
+ *
+ * @author jepeders
+ */
+public class Batching {
+
+    /** The shortest duration of a batch. */
+    public long targetBatchInNanos = 10000;
+    /** The largest number of iterations in a batch. */
+    public int maxBatchSize = 1 << 20;
+    /** The number of batches between two unbatched samples or 0 to disable the unbatched samples. */
+    public int unbatchedEvery = 16;
+
+    /**
+     * @throws IllegalArgumentException If the batching parameters are not valid.
+     */
+    public void validate() {
+        if (targetBatchInNanos <= 0) {
+            throw new IllegalArgumentException("The target batch duration must be positive");
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("The maximum batch size must be at least 1");
+        }
+        if (unbatchedEvery < 0) {
+            throw new IllegalArgumentException("The unbatched sample interval cannot be negative");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("batches of at least %dns with an unbatched sample every %d batches", targetBatchInNanos,
+                unbatchedEvery);
+    }
+
+}
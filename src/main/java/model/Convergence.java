@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Describes when a load of a {@link Task} has run long enough. Instead of running every load for the whole runtime,
+ * the load stops once the confidence intervals of the tracked deadline percentiles are narrower than the relative
+ * error for a number of consecutive windows. The load always runs for the minimum runtime and stops at the maximum
+ * runtime, whether the percentiles converged or not.
+ *
+ * @author jepeders
+ */
+public class Convergence {
+
+    /** The two-sided confidence levels that can be used and their critical values in the standard normal distribution. */
+    private static final double[] CONFIDENCES = {0.9, 0.95, 0.99};
+    private static final double[] Z_CRITICAL_VALUES = {1.6449, 1.9600, 2.5758};
+
+    /** The deadline percentiles which must converge. */
+    public List<Double> percentiles = new ArrayList<Double>(Arrays.asList(50d, 99d, 99.9d));
+    /** The largest half-width of the confidence interval of a percentile, relative to the percentile. */
+    public double relativeError = 0.1;
+    /** The confidence of the intervals: 0.9, 0.95 or 0.99. */
+    public double confidence = 0.95;
+    /** The time between two checks of the percentiles. */
+    public long windowInMs = 1000;
+    /** The number of consecutive windows the percentiles must be within the relative error. */
+    public int stableWindows = 3;
+    public long minRuntimeInMs = 5000;
+    /** The longest runtime of a load or 0 to use the runtime given on the command line. */
+    public long maxRuntimeInMs = 0;
+
+    /**
+     * @throws IllegalArgumentException If the convergence parameters are not valid.
+     */
+    public void validate() {
+        if (percentiles == null || percentiles.isEmpty()) {
+            throw new IllegalArgumentException("Convergence needs at least one percentile");
+        }
+        for (Double percentile : percentiles) {
+            if (percentile == null || percentile <= 0 || percentile >= 100) {
+                throw new IllegalArgumentException("Converging percentiles must be above 0 and below 100");
+            }
+        }
+        if (relativeError <= 0) {
+            throw new IllegalArgumentException("The relative error must be positive");
+        }
+        if (windowInMs < 1) {
+            throw new IllegalArgumentException("The convergence window must be at least 1ms");
+        }
+        if (stableWindows < 1) {
+            throw new IllegalArgumentException("At least 1 stable window is needed");
+        }
+        if (minRuntimeInMs < 0 || maxRuntimeInMs < 0) {
+            throw new IllegalArgumentException("Runtime guards cannot be negative");
+        }
+        if (maxRuntimeInMs > 0 && maxRuntimeInMs < minRuntimeInMs) {
+            throw new IllegalArgumentException("The maximum runtime cannot be below the minimum runtime");
+        }
+        getZCriticalValue();
+    }
+
+    /**
+     * @return The critical value of the standard normal distribution for the confidence.
+     * @throws IllegalArgumentException If the confidence is not one of the supported levels.
+     */
+    public double getZCriticalValue() {
+        for (int i = 0; i < CONFIDENCES.length; i++) {
+            if (Math.abs(CONFIDENCES[i] - confidence) < 1e-9) {
+                return Z_CRITICAL_VALUES[i];
+            }
+        }
+        throw new IllegalArgumentException("The convergence confidence must be 0.9, 0.95 or 0.99");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("percentiles %s within %.1f%% at %.0f%% confidence", percentiles, relativeError * 100,
+                confidence * 100);
+    }
+
+}
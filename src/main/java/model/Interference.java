@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Describes the background threads which interfere with a {@link Task} while it runs. Every load is run once for each
+ * interference level, and the level scales the intensity of all the co-runners. A level of 0 runs the task without
+ * interference, which is the baseline the other levels are compared to.
+ *
+ * @author jepeders
+ */
+public class Interference {
+
+    /** The levels to run every load with, in order. */
+    public List<Double> levels = new ArrayList<Double>(Arrays.asList(0d, 0.5d, 1d));
+    /** The background threads to run. */
+    public List<CoRunner> coRunners = new ArrayList<CoRunner>();
+
+    /**
+     * @throws IllegalArgumentException If the interference parameters are not valid.
+     */
+    public void validate() {
+        if (levels == null || levels.isEmpty()) {
+            throw new IllegalArgumentException("Interference needs at least one level");
+        }
+        for (Double level : levels) {
+            if (level == null || level < 0) {
+                throw new IllegalArgumentException("Interference levels cannot be negative");
+            }
+        }
+        if (coRunners == null || coRunners.isEmpty()) {
+            throw new IllegalArgumentException("Interference needs at least one co-runner");
+        }
+        for (CoRunner coRunner : coRunners) {
+            coRunner.validate();
+        }
+    }
+
+    /**
+     * A number of threads generating one type of interference. While active, a co-runner works for a fraction of the
+     * time given by its intensity and pauses for the rest. The duty cycle decides how much of every period it is
+     * active, so the same average load can be generated as smooth noise or in bursts.
+     */
+    public static class CoRunner {
+
+        /** Spins on the CPU. */
+        public static final String CPU = "cpu";
+        /** Streams sequentially through a large buffer to use the memory bandwidth. */
+        public static final String BANDWIDTH = "bandwidth";
+        /** Allocates short-lived objects to put pressure on the garbage collector. */
+        public static final String ALLOCATION = "allocation";
+        /** Reads and writes random cache lines of a buffer to evict the caches. */
+        public static final String CACHE = "cache";
+
+        /** The type of interference: cpu, bandwidth, allocation or cache. */
+        public String type = CPU;
+        public int threads = 1;
+        /** The fraction of the active time spent working, scaled by the interference level. */
+        public double intensity = 1;
+        /** The fraction of every period the co-runner is active. */
+        public double dutyCycle = 1;
+        public long periodInMs = 10;
+        /** The buffer size of the bandwidth and cache co-runners or the largest allocated object (up to 64KB). */
+        public int sizeInBytes = 64 << 20;
+
+        void validate() {
+            if (!CPU.equals(type) && !BANDWIDTH.equals(type) && !ALLOCATION.equals(type) && !CACHE.equals(type)) {
+                throw new IllegalArgumentException("Unknown co-runner type " + type);
+            }
+            if (threads < 1) {
+                throw new IllegalArgumentException("A co-runner needs at least one thread");
+            }
+            if (intensity < 0 || intensity > 1) {
+                throw new IllegalArgumentException("Co-runner intensity must be between 0 and 1");
+            }
+            if (dutyCycle <= 0 || dutyCycle > 1) {
+                throw new IllegalArgumentException("Co-runner duty cycle must be above 0 and at most 1");
+            }
+            if (periodInMs < 1) {
+                throw new IllegalArgumentException("Co-runner period must be at least 1ms");
+            }
+            if (sizeInBytes < 64) {
+                throw new IllegalArgumentException("Co-runner size must be at least 64 bytes");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d %s thread(s) at intensity %.2f, duty cycle %.2f of %dms", threads,
+                    type, intensity, dutyCycle, periodInMs);
+        }
+    }
+
+}
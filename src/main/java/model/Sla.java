@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The service level a {@link Task} must meet, given as a number of rules on the recorded histograms, such as "the 99th
+ * percentile of the deadline is below 8ms" or "less than 0.1% of the iterations miss the deadline". The rules are
+ * checked against the histograms while a load runs, and the load is stopped as soon as a violation is statistically
+ * certain: when the lower bound of the confidence interval of the fraction of samples above the limit is larger than
+ * the fraction the rule allows. Since the rules are checked many times during a load, the confidence of every check
+ * is raised so the confidence holds for the load as a whole.
+ *
+ * @author jepeders
+ */
+public class Sla {
+
+    /** The one-sided confidence levels that can be used and their critical values in the standard normal distribution. */
+    private static final double[] CONFIDENCES = {0.9, 0.95, 0.99, 0.999};
+    private static final double[] Z_CRITICAL_VALUES = {1.2816, 1.6449, 2.3263, 3.0902};
+
+    /* The coefficients of the rational approximations of the normal quantile by P. J. Acklam */
+    private static final double[] A = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+            1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+    private static final double[] B = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+            6.680131188771972e+01, -1.328068155288572e+01};
+    private static final double[] C = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+            -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+    private static final double[] D = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+            3.754408661907416e+00};
+    private static final double TAIL = 0.02425;
+
+    /** The rules the results must satisfy. */
+    public List<Rule> rules = new ArrayList<Rule>();
+    /** The time between two checks of the rules while a load runs. */
+    public long checkIntervalInMs = 1000;
+    /** The confidence needed before a violation is certain: 0.9, 0.95, 0.99 or 0.999. */
+    public double confidence = 0.99;
+    /** True to stop a load as soon as a violation is certain, false to always run for the whole runtime. */
+    public boolean stopOnViolation = true;
+
+    /**
+     * @param deadlineInNanos The deadline of the task, which the miss ratio rules need.
+     * @throws IllegalArgumentException If the SLA is not valid.
+     */
+    public void validate(long deadlineInNanos) {
+        if (rules == null || rules.isEmpty()) {
+            throw new IllegalArgumentException("An SLA needs at least one rule");
+        }
+        for (Rule rule : rules) {
+            rule.validate();
+            if (rule.isMissRatio() && deadlineInNanos <= 0) {
+                throw new IllegalArgumentException("A miss ratio rule needs a task with a deadline");
+            }
+        }
+        if (checkIntervalInMs < 1) {
+            throw new IllegalArgumentException("The SLA check interval must be at least 1ms");
+        }
+        getZCriticalValue();
+    }
+
+    /**
+     * @return The critical value of the standard normal distribution for the confidence.
+     * @throws IllegalArgumentException If the confidence is not one of the supported levels.
+     */
+    public double getZCriticalValue() {
+        for (int i = 0; i < CONFIDENCES.length; i++) {
+            if (Math.abs(CONFIDENCES[i] - confidence) < 1e-9) {
+                return Z_CRITICAL_VALUES[i];
+            }
+        }
+        throw new IllegalArgumentException("The SLA confidence must be 0.9, 0.95, 0.99 or 0.999");
+    }
+
+    /**
+     * Gives the critical value for a number of checks of the same rules. Every check is another chance to find a
+     * violation by chance, so the error allowed by the confidence is split evenly between the checks (the Bonferroni
+     * correction), which keeps the chance of any false violation below <code>1 - confidence</code>.
+     *
+     * @param checks The number of times the rules are checked.
+     * @return The critical value of the standard normal distribution for the confidence of every single check.
+     * @throws IllegalArgumentException If the confidence is not one of the supported levels.
+     */
+    public double getZCriticalValue(long checks) {
+        final double z = getZCriticalValue();
+        return checks <= 1 ? z : upperQuantile((1 - confidence) / checks);
+    }
+
+    /**
+     * @return The value of the standard normal distribution exceeded with the given probability, with a relative
+     * error below 1.2e-9.
+     */
+    private static double upperQuantile(double alpha) {
+        if (alpha < TAIL) {
+            final double q = Math.sqrt(-2 * Math.log(alpha));
+            return -(((((C[0] * q + C[1]) * q + C[2]) * q + C[3]) * q + C[4]) * q + C[5])
+                    / ((((D[0] * q + D[1]) * q + D[2]) * q + D[3]) * q + 1);
+        }
+        final double q = alpha - 0.5;
+        final double r = q * q;
+        return -(((((A[0] * r + A[1]) * r + A[2]) * r + A[3]) * r + A[4]) * r + A[5]) * q
+                / (((((B[0] * r + B[1]) * r + B[2]) * r + B[3]) * r + B[4]) * r + 1);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        for (Rule rule : rules) {
+            builder.append(builder.length() == 0 ? "" : ", ").append(rule);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * A limit on one of the histograms. A percentile rule limits the value of a percentile of the deadline, response
+     * or period histogram, and a miss ratio rule limits the fraction of the iterations which miss the deadline of the
+     * task. Either way the rule allows a fraction of the samples to be above a limit.
+     */
+    public static class Rule {
+
+        public static final String DEADLINE = "deadline";
+        public static final String RESPONSE = "response";
+        public static final String PERIOD = "period";
+        public static final String MISS_RATIO = "missRatio";
+
+        /** The histogram to check: deadline, response, period or missRatio. */
+        public String metric = DEADLINE;
+        /** The percentile which must be below the limit, where 100 is the maximum value. */
+        public double percentile = 99;
+        /** The limit of the percentile. */
+        public double maxInMs;
+        /** The largest fraction of iterations which may miss the deadline in a miss ratio rule. */
+        public double maxRatio;
+
+        void validate() {
+            if (!DEADLINE.equals(metric) && !RESPONSE.equals(metric) && !PERIOD.equals(metric)
+                    && !MISS_RATIO.equals(metric)) {
+                throw new IllegalArgumentException("Unknown SLA metric " + metric);
+            }
+            if (isMissRatio()) {
+                if (maxRatio < 0 || maxRatio >= 1) {
+                    throw new IllegalArgumentException("The SLA miss ratio must be at least 0 and below 1");
+                }
+            } else {
+                if (percentile <= 0 || percentile > 100) {
+                    throw new IllegalArgumentException("The SLA percentile must be above 0 and at most 100");
+                }
+                if (maxInMs <= 0) {
+                    throw new IllegalArgumentException("The SLA limit must be positive");
+                }
+            }
+        }
+
+        public boolean isMissRatio() {
+            return MISS_RATIO.equals(metric);
+        }
+
+        /**
+         * @param deadlineInNanos The deadline of the task.
+         * @return The value the samples are compared to.
+         */
+        public long getLimitInNanos(long deadlineInNanos) {
+            return isMissRatio() ? deadlineInNanos : (long) (maxInMs * 1000000);
+        }
+
+        /**
+         * @return The fraction of the samples which may be above the limit.
+         */
+        public double getAllowedFraction() {
+            return isMissRatio() ? maxRatio : (100 - percentile) / 100;
+        }
+
+        @Override
+        public String toString() {
+            if (isMissRatio()) {
+                return String.format("miss ratio < %s", format(maxRatio));
+            }
+            return String.format("%s %s < %sms", percentile >= 100 ? "max" : "p" + format(percentile), metric,
+                    format(maxInMs));
+        }
+
+        private static String format(double value) {
+            return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+        }
+    }
+
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2016 European Organisation for Nuclear Research (CERN), All Rights Reserved.
+ */
+
+package model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The verdict of the {@link Sla} of a task on the results of one load. For every rule the verdict counts the samples
+ * above the limit and computes the Wilson score interval of the fraction of samples above the limit. A rule passes if
+ * the observed fraction is at most the allowed fraction, and the result is certain when the interval does not contain
+ * the allowed fraction. The verdict is written as JSON.
+ * <p>
+ * The deadline histogram is corrected for coordinated omission, and its synthetic samples are not observations of
+ * their own. The miss ratio rules therefore count the measured deadlines, one sample per iteration, and the intervals
+ * of the percentile rules of the deadline use the number of measured iterations as the number of samples.
+ * </p>
+ *
+ * @author jepeders
+ */
+public class SlaVerdict {
+
+    public static final String PASS = "pass";
+    public static final String FAIL = "fail";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public int load;
+    /** Pass if every rule passed, fail otherwise. */
+    public String verdict;
+    /** True if the load was stopped before the end of the runtime, because a violation was certain. */
+    public boolean stoppedEarly;
+    /** The time the load ran for when the verdict was given or -1 if unknown. */
+    public long elapsedInNanos = -1;
+    public double confidence;
+    /** The number of checks the confidence is split between. */
+    public long checks = 1;
+    public List<RuleResult> rules = new ArrayList<RuleResult>();
+
+    /**
+     * Checks the rules of the SLA against the given histograms, where the deadline histogram holds one sample per
+     * iteration.
+     *
+     * @param sla             The rules to check.
+     * @param deadlineInNanos The deadline of the task, used by the miss ratio rules.
+     * @param load            The load the histograms were recorded with.
+     * @param deadline        The deadline histogram.
+     * @param period          The period histogram.
+     * @param response        The response (hiccup) histogram.
+     * @return The verdict of the rules.
+     */
+    public static SlaVerdict of(Sla sla, long deadlineInNanos, int load, Histogram deadline, Histogram period,
+                                Histogram response) {
+        return of(sla, deadlineInNanos, load, deadline, deadline, period, response, 1);
+    }
+
+    /**
+     * Checks the rules of the SLA against the given histograms.
+     *
+     * @param sla              The rules to check.
+     * @param deadlineInNanos  The deadline of the task, used by the miss ratio rules.
+     * @param load             The load the histograms were recorded with.
+     * @param deadline         The deadline histogram, which may be corrected for coordinated omission.
+     * @param measuredDeadline The measured deadlines without correction, one sample per iteration.
+     * @param period           The period histogram.
+     * @param response         The response (hiccup) histogram.
+     * @param checks           The number of times the rules are checked during the load.
+     * @return The verdict of the rules.
+     */
+    public static SlaVerdict of(Sla sla, long deadlineInNanos, int load, Histogram deadline,
+                                Histogram measuredDeadline, Histogram period, Histogram response, long checks) {
+        final SlaVerdict verdict = new SlaVerdict();
+        verdict.load = load;
+        verdict.confidence = sla.confidence;
+        verdict.checks = Math.max(1, checks);
+        final double z = sla.getZCriticalValue(verdict.checks);
+        boolean passed = true;
+        for (Sla.Rule rule : sla.rules) {
+            final Histogram histogram = Sla.Rule.RESPONSE.equals(rule.metric) ? response
+                    : Sla.Rule.PERIOD.equals(rule.metric) ? period : deadline;
+            final RuleResult result = RuleResult.of(rule, deadlineInNanos, histogram,
+                    histogram == deadline ? measuredDeadline : histogram, z);
+            passed &= result.passed;
+            verdict.rules.add(result);
+        }
+        verdict.verdict = passed ? PASS : FAIL;
+        return verdict;
+    }
+
+    /**
+     * @return True if a rule is certainly violated.
+     */
+    @JsonIgnore
+    public boolean isViolationCertain() {
+        for (RuleResult rule : rules) {
+            if (!rule.passed && rule.certain) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @JsonIgnore
+    public boolean isPassed() {
+        return PASS.equals(verdict);
+    }
+
+    /**
+     * Writes the verdict as JSON.
+     *
+     * @param output The stream to write to. It is not closed.
+     */
+    public void write(OutputStream output) {
+        try {
+            output.write(MAPPER.writeValueAsBytes(this));
+            output.write('\n');
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("SLA ").append(verdict);
+        for (RuleResult rule : rules) {
+            if (!rule.passed) {
+                builder.append(rule.certain ? ", violated " : ", failed ").append(rule.rule);
+            }
+        }
+        if (stoppedEarly) {
+            builder.append(String.format(", stopped after %.1fs", elapsedInNanos / 1e9));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The result of one rule.
+     */
+    public static class RuleResult {
+
+        public String rule;
+        public boolean passed;
+        /** True if the confidence interval of the fraction above the limit excludes the allowed fraction. */
+        public boolean certain;
+        /** The value of the percentile in nanoseconds or the miss ratio. */
+        public double observed;
+        /** The limit in nanoseconds or the largest miss ratio. */
+        public double limit;
+        public long samples;
+        public long samplesAboveLimit;
+        public double allowedFraction;
+        public double lowerBound;
+        public double upperBound;
+
+        /**
+         * @param histogram The histogram of the rule.
+         * @param measured  The same values without synthetic samples, which gives the number of samples.
+         */
+        static RuleResult of(Sla.Rule rule, long deadlineInNanos, Histogram histogram, Histogram measured,
+                             double z) {
+            final RuleResult result = new RuleResult();
+            final long limitInNanos = rule.getLimitInNanos(deadlineInNanos);
+            result.rule = rule.toString();
+            result.samples = measured.getTotalCount();
+            result.allowedFraction = rule.getAllowedFraction();
+            final double fraction;
+            if (rule.isMissRatio()) {
+                result.samplesAboveLimit = result.samples == 0 ? 0
+                        : result.samples - measured.getCountBetweenValues(0, limitInNanos);
+                fraction = result.samples == 0 ? 0 : (double) result.samplesAboveLimit / result.samples;
+                result.observed = fraction;
+                result.limit = rule.maxRatio;
+            } else {
+                /* The fraction of the percentile includes the synthetic samples, the interval only the measured */
+                final long total = histogram.getTotalCount();
+                fraction = total == 0 ? 0 : (double) (total - histogram.getCountBetweenValues(0, limitInNanos)) / total;
+                result.samplesAboveLimit = (long) Math.ceil(fraction * result.samples);
+                result.observed = rule.percentile >= 100 ? histogram.getMaxValue()
+                        : histogram.getValueAtPercentile(rule.percentile);
+                result.limit = limitInNanos;
+            }
+            result.lowerBound = wilsonBound(result.samplesAboveLimit, result.samples, -z);
+            result.upperBound = wilsonBound(result.samplesAboveLimit, result.samples, z);
+            result.passed = fraction <= result.allowedFraction;
+            /* With no samples above the limit allowed, a single sample above it is a certain violation */
+            result.certain = result.passed ? result.upperBound < result.allowedFraction
+                    : result.allowedFraction == 0 || result.lowerBound > result.allowedFraction;
+            return result;
+        }
+
+        /**
+         * @return The bound of the Wilson score interval of the fraction of successes on the side given by the sign
+         * of the critical value.
+         */
+        static double wilsonBound(long successes, long trials, double z) {
+            if (trials == 0) {
+                return z < 0 ? 0 : 1;
+            }
+            final double n = trials;
+            final double p = successes / n;
+            final double denominator = 1 + z * z / n;
+            final double centre = p + z * z / (2 * n);
+            final double margin = z * Math.sqrt(p * (1 - p) / n + z * z / (4 * n * n));
+            return Math.max(0, Math.min(1, (centre + margin) / denominator));
+        }
+    }
+
+}
@@ -4,15 +4,17 @@
 
 package model;
 
+import benchmark.GeneratorParameters;
 import benchmark.LoadGenerator;
 import benchmark.LoadIterator;
+import benchmark.Workload;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
-import java.lang.reflect.Method;
+import java.util.Map;
 
 /**
  * A task that can run an indefinite number of iterations with varying duration (period) and deadline requirements
@@ -25,6 +27,23 @@ public class Task {
     public final long periodInNanos;
     public final long deadlineInNanos;
     public final int initialWorkload;
+    public final String generator;
+    private final GeneratorParameters parameters;
+
+    @JsonProperty("arrival")
+    private Arrival arrival;
+
+    @JsonProperty("batching")
+    private Batching batching;
+
+    @JsonProperty("interference")
+    private Interference interference;
+
+    @JsonProperty("sla")
+    private Sla sla;
+
+    @JsonProperty("convergence")
+    private Convergence convergence;
 
     /**
      * Creates a task with a deadline and period in the given unit.
@@ -32,12 +51,69 @@ public class Task {
      * @param deadlineInNanos The maximum time it can take to perform one iteration.
      * @param periodInNanos   The time interval between the beginning of iterations.
      */
+    public Task(long deadlineInMs, long periodInMs, int initialWorkload) {
+        this(deadlineInMs, periodInMs, initialWorkload, null, null);
+    }
+
+    /**
+     * Creates a task with a deadline and period in the given unit, which generates load with the named generator.
+     *
+     * @param deadlineInNanos The maximum time it can take to perform one iteration.
+     * @param periodInNanos   The time interval between the beginning of iterations.
+     * @param generator       The name of the load generator or null to use the default generator.
+     * @param parameters      The parameters to give the load generator.
+     */
     @JsonCreator
     public Task(@JsonProperty("deadlineInMs") long deadlineInMs, @JsonProperty("periodInMs") long periodInMs,
-                @JsonProperty("initalWorkload") int initialWorkload) {
+                @JsonProperty("initalWorkload") int initialWorkload, @JsonProperty("generator") String generator,
+                @JsonProperty("parameters") Map<String, Object> parameters) {
         this.deadlineInNanos = MILLISECONDS.toNanos(deadlineInMs);
         this.periodInNanos = MILLISECONDS.toNanos(periodInMs);
         this.initialWorkload = initialWorkload;
+        this.generator = generator;
+        this.parameters = new GeneratorParameters(parameters);
+    }
+
+    /**
+     * @return The parameters to give the load generator of this task.
+     */
+    public GeneratorParameters getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return The arrivals of requests when the task runs in open-loop mode or null if the task runs in a closed loop.
+     */
+    public Arrival getArrival() {
+        return arrival;
+    }
+
+    /**
+     * @return How the iterations are sampled in batches or null if every iteration is timed on its own.
+     */
+    public Batching getBatching() {
+        return batching;
+    }
+
+    /**
+     * @return The background threads interfering with the task or null if the task runs without interference.
+     */
+    public Interference getInterference() {
+        return interference;
+    }
+
+    /**
+     * @return The service level the results of every load are checked against or null if the task has no SLA.
+     */
+    public Sla getSla() {
+        return sla;
+    }
+
+    /**
+     * @return When a load has run long enough or null if every load runs for the whole runtime.
+     */
+    public Convergence getConvergence() {
+        return convergence;
     }
 
     public LoadIterator getLoadIterator(int iterations) {
@@ -45,24 +121,14 @@ public class Task {
     }
 
     /**
-     * An iteration of the task that uses the {@link LoadGenerator} given in the constructor to generate an amount of
-     * 'load'.
+     * An iteration of the task that uses the {@link LoadGenerator} of the given {@link Workload} to generate an amount
+     * of 'load'.
      *
-     * @param load The amount of load to generate. The exact definition is left to the {@link LoadGenerator}.
+     * @param workload The workload running the generator.
+     * @param load     The amount of load to generate. The exact definition is left to the {@link LoadGenerator}.
      */
-    public void iteration(Class<?> classToTest, Object objectForTest, int load) {
-        
-        try {
-            Class<?> CArg = int.class;
-            Method ActionToTest = classToTest.getMethod("generateLoad", CArg);
-            ActionToTest.invoke(objectForTest, load);
-            
-        }
-        catch(Exception e) {
-            e.printStackTrace(System.err);
-            System.err.println("---------------------");
-        }
-        
+    public void iteration(Workload workload, int load) {
+        workload.generateLoad(load);
     }
 
     @Override
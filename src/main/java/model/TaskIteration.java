@@ -5,6 +5,11 @@
 package model;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.HdrHistogram.Histogram;
 
@@ -18,6 +23,8 @@ import benchmark.SystemMetrics;
  */
 public class TaskIteration {
 
+    public static final String VERDICT_OUTPUT_NAME = "verdict";
+
     public final int load;
 
     private final Histogram hiccupHistogram;
@@ -27,6 +34,12 @@ public class TaskIteration {
     private final SystemMetrics statusAfter;
     private final SystemMetrics statusBefore;
 
+    /* Histograms and notes recorded by specific modes of the runner, written next to the histograms above */
+    private final Map<String, Histogram> histograms = new LinkedHashMap<String, Histogram>();
+    private final List<String> notes = new ArrayList<String>();
+    private final Map<String, String> reports = new LinkedHashMap<String, String>();
+    private SlaVerdict verdict;
+
     public TaskIteration(int load, SystemMetrics statusBefore, SystemMetrics statusAfter, Histogram deadlineHistogram,
                          Histogram periodHistogram, Histogram hiccupHistogram) {
         this.load = load;
@@ -37,20 +50,179 @@ public class TaskIteration {
         this.statusAfter = statusAfter;
     }
 
+    /**
+     * Merges the results of repeated trials of the same load into one iteration. The histograms are added together,
+     * and the system metrics are taken from before the first trial and after the last trial.
+     *
+     * @param trials The iterations to merge.
+     * @return An iteration containing the results of all the trials.
+     */
+    public static TaskIteration merge(List<TaskIteration> trials) {
+        final TaskIteration first = trials.get(0);
+        final TaskIteration last = trials.get(trials.size() - 1);
+        final Histogram deadlineHistogram = copyOf(first.deadlineHistogram);
+        final Histogram periodHistogram = copyOf(first.periodHistogram);
+        final Histogram hiccupHistogram = copyOf(first.hiccupHistogram);
+        for (TaskIteration trial : trials.subList(1, trials.size())) {
+            deadlineHistogram.add(trial.deadlineHistogram);
+            periodHistogram.add(trial.periodHistogram);
+            hiccupHistogram.add(trial.hiccupHistogram);
+        }
+        final TaskIteration merged = new TaskIteration(first.load, first.statusBefore, last.statusAfter,
+                deadlineHistogram, periodHistogram, hiccupHistogram);
+        for (TaskIteration trial : trials) {
+            for (Map.Entry<String, Histogram> entry : trial.histograms.entrySet()) {
+                final Histogram histogram = merged.histograms.get(entry.getKey());
+                if (histogram == null) {
+                    merged.histograms.put(entry.getKey(), copyOf(entry.getValue()));
+                } else {
+                    histogram.add(entry.getValue());
+                }
+            }
+            merged.notes.addAll(trial.notes);
+            for (Map.Entry<String, String> entry : trial.reports.entrySet()) {
+                merged.addReport(entry.getKey(), entry.getValue());
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Copies a histogram which can grow to hold the values of the histograms added to it. Decoded histograms only
+     * cover the range of their own values.
+     */
+    private static Histogram copyOf(Histogram histogram) {
+        final Histogram copy = histogram.copy();
+        copy.setAutoResize(true);
+        return copy;
+    }
+
+    /**
+     * Adds a histogram which is written to its own file, named after the load and the given name. If a histogram
+     * with the same name was already added, the values of the two histograms are combined.
+     *
+     * @param name      The name of the histogram.
+     * @param histogram The recorded histogram.
+     */
+    public void addHistogram(String name, Histogram histogram) {
+        final Histogram existing = histograms.get(name);
+        if (existing == null) {
+            histograms.put(name, histogram);
+        } else {
+            final Histogram combined = copyOf(existing);
+            combined.add(histogram);
+            histograms.put(name, combined);
+        }
+    }
+
+    /**
+     * @return The histograms added to this iteration by name, in the order they were added.
+     */
+    public Map<String, Histogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * Adds a line which is written to the log along with the system metrics of this iteration.
+     *
+     * @param note The line to write.
+     */
+    public void addNote(String note) {
+        notes.add(note);
+    }
+
+    public List<String> getNotes() {
+        return Collections.unmodifiableList(notes);
+    }
+
+    /**
+     * Adds a text which is written to its own file, named after the load and the given name. If a report with the
+     * same name was already added, the text is appended to it.
+     *
+     * @param name   The name of the report.
+     * @param report The text of the report.
+     */
+    public void addReport(String name, String report) {
+        final String existing = reports.get(name);
+        reports.put(name, existing == null ? report : existing + String.format("%n") + report);
+    }
+
+    /**
+     * @return The verdict of the SLA of the task on this iteration or null if it has not been checked.
+     */
+    public SlaVerdict getVerdict() {
+        return verdict;
+    }
+
+    /**
+     * Sets the verdict of the SLA, which is written to the <code>verdict</code> file of the load.
+     */
+    public void setVerdict(SlaVerdict verdict) {
+        this.verdict = verdict;
+    }
+
+    public Histogram getDeadlineHistogram() {
+        return deadlineHistogram;
+    }
+
+    public Histogram getPeriodHistogram() {
+        return periodHistogram;
+    }
+
+    public Histogram getHiccupHistogram() {
+        return hiccupHistogram;
+    }
+
     public void write(BenchmarkPrinter printer) {
         writeHeader(printer.getStandardOutput());
         writeHistogram(hiccupHistogram, printer.getHiccupOutput(load));
         writeHistogram(deadlineHistogram, printer.getDeadlineOutput(load));
         writeHistogram(periodHistogram, printer.getPeriodOutput(load));
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            writeHistogram(entry.getValue(), printer.getOutput(entry.getKey(), load));
+        }
+        for (Map.Entry<String, String> entry : reports.entrySet()) {
+            final PrintStream output = printer.getOutput(entry.getKey(), load);
+            try {
+                output.print(entry.getValue());
+            } finally {
+                output.close();
+            }
+        }
+        if (verdict != null) {
+            final PrintStream output = printer.getOutput(VERDICT_OUTPUT_NAME, load);
+            try {
+                verdict.write(output);
+            } finally {
+                output.close();
+            }
+        }
     }
 
+    /**
+     * Writes the header in a single call, so it is not interleaved with the lines the benchmark thread writes to the
+     * same log while the results are written in the background.
+     */
     private void writeHeader(PrintStream output) {
-        output.println(String.format("Task iteration with %d load", load));
-        output.println(statusBefore.compareMetrics(statusAfter));
+        final String separator = String.format("%n");
+        final StringBuilder header = new StringBuilder();
+        header.append(String.format("Task iteration with %d load", load)).append(separator);
+        for (String note : notes) {
+            header.append(note).append(separator);
+        }
+        if (verdict != null) {
+            header.append(verdict).append(separator);
+        }
+        header.append(statusBefore.compareMetrics(statusAfter));
+        output.println(header);
     }
 
     private void writeHistogram(Histogram histogram, PrintStream output) {
-        histogram.outputPercentileDistribution(output, 1d);
+        try {
+            histogram.outputPercentileDistribution(output, 1d);
+        } finally {
+            output.close();
+        }
     }
 
 }